@@ -0,0 +1,122 @@
+package net.nitrado.hytale.plugins.webserver.servlets;
+
+import org.eclipse.jetty.ee10.servlet.ServletContextHandler;
+import org.eclipse.jetty.ee10.servlet.ServletHolder;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares serving a large file through the buffered copy loop against the zero-copy path of
+ * {@link StaticFileServlet}. Both servlets serve the same file from an embedded Jetty; the client reads
+ * the body into a reused buffer so its own allocations stay out of the {@code -prof gc} numbers as far as
+ * possible.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StaticFileServletBenchmark {
+    private static final String FILE_NAME = "asset.bin";
+
+    @Param({"8", "64"})
+    public int fileSizeMiB;
+
+    private Path directory;
+    private Server server;
+    private URI copyUri;
+    private URI zeroCopyUri;
+
+    private final byte[] readBuffer = new byte[64 * 1024];
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("webserver-benchmark");
+        writeFile(directory.resolve(FILE_NAME), fileSizeMiB * 1024L * 1024L);
+
+        var copy = new StaticFileServlet(directory);
+        copy.setZeroCopyThreshold(Long.MAX_VALUE);
+        copy.setCacheLimits(0, 0);
+
+        var zeroCopy = new StaticFileServlet(directory);
+        zeroCopy.setCacheLimits(0, 0);
+
+        var context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(copy), "/copy/*");
+        context.addServlet(new ServletHolder(zeroCopy), "/zero-copy/*");
+
+        server = new Server();
+        var connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(context);
+        server.start();
+
+        var base = "http://127.0.0.1:" + connector.getLocalPort();
+        copyUri = URI.create(base + "/copy/" + FILE_NAME);
+        zeroCopyUri = URI.create(base + "/zero-copy/" + FILE_NAME);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public long copyLoop() throws IOException {
+        return fetch(copyUri);
+    }
+
+    @Benchmark
+    public long zeroCopy() throws IOException {
+        return fetch(zeroCopyUri);
+    }
+
+    private long fetch(URI uri) throws IOException {
+        var connection = (HttpURLConnection) uri.toURL().openConnection();
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected status " + connection.getResponseCode() + " for " + uri);
+        }
+
+        long total = 0;
+        try (InputStream in = connection.getInputStream()) {
+            int n;
+            while ((n = in.read(readBuffer)) != -1) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    private static void writeFile(Path path, long size) throws IOException {
+        var chunk = new byte[64 * 1024];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) i;
+        }
+
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+}
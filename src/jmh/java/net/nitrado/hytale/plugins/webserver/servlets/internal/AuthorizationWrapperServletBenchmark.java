@@ -0,0 +1,121 @@
+package net.nitrado.hytale.plugins.webserver.servlets.internal;
+
+import com.hypixel.hytale.server.core.permissions.PermissionHolder;
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.nitrado.hytale.plugins.webserver.authorization.RequirePermissions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-request overhead of {@link AuthorizationWrapperServlet}, which looks up the permission
+ * requirements resolved in {@code init()}, against the reflective annotation lookup it used to perform on
+ * every request. Requests, responses and the principal are plain proxies, so the numbers cover the wrapper
+ * and not a servlet container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationWrapperServletBenchmark {
+
+    public static class BenchmarkServlet extends HttpServlet {
+        @Override
+        @RequirePermissions({"nitrado.webserver.benchmark.read", "nitrado.webserver.benchmark.list"})
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+    }
+
+    private final BenchmarkServlet delegate = new BenchmarkServlet();
+    private AuthorizationWrapperServlet wrapper;
+
+    private HttpServletRequest annotatedRequest;
+    private HttpServletRequest unannotatedRequest;
+    private HttpServletResponse response;
+
+    @Setup
+    public void setUp() throws ServletException {
+        // The logger is only used on error paths, which the benchmarks don't reach
+        wrapper = new AuthorizationWrapperServlet(null, delegate);
+        wrapper.init(proxy(ServletConfig.class, Map.of("getServletName", "benchmark")));
+
+        Object principal = Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{Principal.class, PermissionHolder.class},
+                (p, method, args) -> switch (method.getName()) {
+                    case "hasPermission" -> true;
+                    case "getName" -> "benchmark";
+                    default -> defaultValue(method.getReturnType());
+                }
+        );
+
+        annotatedRequest = proxy(HttpServletRequest.class, Map.of(
+                "getMethod", "GET",
+                "getProtocol", "HTTP/1.1",
+                "getUserPrincipal", principal
+        ));
+        unannotatedRequest = proxy(HttpServletRequest.class, Map.of(
+                "getMethod", "POST",
+                "getProtocol", "HTTP/1.1",
+                "getUserPrincipal", principal
+        ));
+        response = proxy(HttpServletResponse.class, Map.of());
+    }
+
+    @TearDown
+    public void tearDown() {
+        wrapper.destroy();
+    }
+
+    @Benchmark
+    public void annotatedMethod() throws ServletException, IOException {
+        wrapper.service(annotatedRequest, response);
+    }
+
+    @Benchmark
+    public void unannotatedMethod() throws ServletException, IOException {
+        wrapper.service(unannotatedRequest, response);
+    }
+
+    /**
+     * The lookup the wrapper performed on every request before the requirements were resolved in
+     * {@code init()}, without the permission check itself.
+     */
+    @Benchmark
+    public RequirePermissions[] reflectiveLookup() throws NoSuchMethodException {
+        return delegate.getClass()
+                .getDeclaredMethod("doGet", HttpServletRequest.class, HttpServletResponse.class)
+                .getAnnotationsByType(RequirePermissions.class);
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> results) {
+        return type.cast(Proxy.newProxyInstance(
+                AuthorizationWrapperServletBenchmark.class.getClassLoader(),
+                new Class<?>[]{type},
+                (p, method, args) -> results.containsKey(method.getName())
+                        ? results.get(method.getName())
+                        : defaultValue(method.getReturnType())
+        ));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+}
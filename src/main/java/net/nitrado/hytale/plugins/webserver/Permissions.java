@@ -2,5 +2,6 @@ package net.nitrado.hytale.plugins.webserver;
 
 public final class Permissions {
     public static final String COMMAND_LOGIN_CODE_CREATE = "nitrado.webserver.command.logincode.create";
+    public static final String COMMAND_STATS = "nitrado.webserver.command.stats";
     public static final String WEB_LIST_PLUGINS = "nitrado.webserver.web.list.plugins";
 }
@@ -0,0 +1,155 @@
+package net.nitrado.hytale.plugins.webserver;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the provisioning directory and applies changed service account files while the server is running.
+ * <p>
+ * File events are collected until none have arrived for the debounce period, so that editors writing a file
+ * in several steps, or tools replacing many files at once, result in a single provisioning run.
+ * </p>
+ */
+final class ProvisioningWatcher implements Closeable {
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 5_000;
+
+    private final HytaleLogger logger;
+    private final Path dir;
+    private final ServiceAccountProvisioner provisioner;
+    private final long debounceMillis;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    ProvisioningWatcher(HytaleLogger logger, Path dir, ServiceAccountProvisioner provisioner, Duration debounce) {
+        this.logger = logger;
+        this.dir = dir;
+        this.provisioner = provisioner;
+        this.debounceMillis = debounce.toMillis();
+    }
+
+    void start() throws IOException {
+        this.watchService = this.dir.getFileSystem().newWatchService();
+        this.dir.register(
+                this.watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE
+        );
+
+        this.thread = new Thread(this::run, "WebServer-ProvisioningWatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops watching, and waits for a provisioning run that is in progress to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.watchService != null) {
+            this.watchService.close();
+        }
+
+        if (this.thread == null) {
+            return;
+        }
+
+        this.thread.interrupt();
+        try {
+            this.thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.thread.isAlive()) {
+            this.logger.atWarning().log("Provisioning watcher did not stop within %d ms", CLOSE_TIMEOUT_MILLIS);
+        }
+    }
+
+    private void run() {
+        var pending = new HashSet<Path>();
+        var rescan = false;
+
+        try {
+            while (true) {
+                WatchKey key = pending.isEmpty() && !rescan
+                        ? this.watchService.take()
+                        : this.watchService.poll(this.debounceMillis, TimeUnit.MILLISECONDS);
+
+                if (key == null) {
+                    // Quiet for the debounce period, apply what we've collected
+                    this.apply(pending, rescan);
+                    pending.clear();
+                    rescan = false;
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan = true;
+                        continue;
+                    }
+
+                    var file = this.dir.resolve((Path) event.context());
+                    if (ServiceAccountProvisioner.isProvisioningFile(file)) {
+                        pending.add(file);
+                    }
+                }
+
+                if (!key.reset()) {
+                    this.logger.atWarning().log("Provisioning directory %s is no longer accessible, stopped watching it", this.dir.toString());
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private void apply(Set<Path> files, boolean rescan) {
+        try {
+            if (rescan) {
+                // Events were lost, so we don't know which files changed
+                this.provisioner.provisionAll(this.dir);
+                return;
+            }
+
+            var changed = new ArrayList<Path>();
+            var removed = new ArrayList<Path>();
+            for (Path file : files) {
+                if (Files.exists(file)) {
+                    changed.add(file);
+                } else {
+                    removed.add(file);
+                }
+            }
+
+            // Provisioned first, so that an account whose file was renamed is kept rather than revoked and recreated
+            if (!changed.isEmpty()) {
+                this.provisioner.provision(changed);
+            }
+
+            if (!removed.isEmpty()) {
+                this.provisioner.remove(removed);
+            }
+        } catch (Exception e) {
+            this.logger.atSevere().withCause(e).log("Failed to apply changes to service account files");
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package net.nitrado.hytale.plugins.webserver;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.permissions.PermissionsModule;
+import com.hypixel.hytale.server.core.permissions.provider.PermissionProvider;
+import net.nitrado.hytale.plugins.webserver.authentication.store.CredentialStore;
+import org.bson.Document;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Provisions service accounts from {@code *.serviceaccount.json} files.
+ * <p>
+ * Provisioning runs in phases: all files are parsed in parallel first, then each account's desired state
+ * is compared to its current credential, groups and permissions, and only the differences are applied.
+ * All credential changes are persisted together once at the end.
+ * </p>
+ * <p>
+ * The provisioner remembers which file provisioned which account, and persists this in its state file. Removing
+ * a file revokes its account, whether that happens while the server is running, see {@link #remove(List)}, or
+ * while it is stopped, in which case the account is revoked by the next {@link #provisionAll(Path)}. Likewise,
+ * changing the name in a file revokes the account it provisioned before.
+ * </p>
+ * <p>
+ * Provisioning runs on the file watcher's thread as well as the server's. The permission module is not known to be
+ * thread safe, so all of the plugin's changes to service account groups and permissions go through this class and
+ * are serialized by its monitor.
+ * </p>
+ */
+final class ServiceAccountProvisioner {
+
+    static final String FILE_SUFFIX = ".serviceaccount.json";
+    static final String NAME_PREFIX = "serviceaccount.";
+    static final String SERVICE_ACCOUNT_GROUP = "SERVICE_ACCOUNT";
+
+    /**
+     * The desired state of a service account, as described by its provisioning file.
+     */
+    record Definition(Path file, String name, boolean enabled, String passwordHash, Set<String> groups, Set<String> permissions) {}
+
+    private enum Outcome { CREATED, UPDATED, UNCHANGED, DELETED, FAILED }
+
+    private final HytaleLogger logger;
+    private final CredentialStore store;
+    private final Path statePath;
+    private final Consumer<UUID> onPermissionsChanged;
+
+    // Account names by the file name of the provisioning file they came from
+    private final Map<String, String> provisionedNames = new ConcurrentHashMap<>();
+
+    /**
+     * @param logger               the logger to use
+     * @param store                the store holding service account credentials
+     * @param statePath            the file remembering which file provisioned which account
+     * @param onPermissionsChanged called with every account whose groups or permissions were changed
+     */
+    ServiceAccountProvisioner(HytaleLogger logger, CredentialStore store, Path statePath, Consumer<UUID> onPermissionsChanged) {
+        this.logger = logger;
+        this.store = store;
+        this.statePath = statePath;
+        this.onPermissionsChanged = onPermissionsChanged;
+    }
+
+    /**
+     * Loads which file provisioned which account, as saved by earlier runs.
+     *
+     * @throws IOException if the state file exists but cannot be read
+     */
+    synchronized void load() throws IOException {
+        Files.deleteIfExists(this.getTempPath());
+
+        if (!Files.exists(this.statePath)) {
+            return;
+        }
+
+        Document files = Document.parse(Files.readString(this.statePath)).get("files", Document.class);
+        if (files == null) {
+            return;
+        }
+
+        this.provisionedNames.clear();
+        for (Map.Entry<String, Object> entry : files.entrySet()) {
+            this.provisionedNames.put(entry.getKey(), entry.getValue().toString());
+        }
+    }
+
+    /**
+     * Provisions all service account files in a directory, and revokes the accounts of files that are gone.
+     * <p>
+     * This catches up on files removed while the server was stopped, or while file events were lost.
+     * </p>
+     *
+     * @param dir the provisioning directory
+     * @throws IOException if the directory cannot be read or the credential store cannot be written
+     */
+    synchronized void provisionAll(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(ServiceAccountProvisioner::isProvisioningFile).toList();
+        }
+
+        // Provisioned first, so that an account whose file was renamed is kept rather than revoked and recreated
+        this.provision(files);
+
+        var present = files.stream()
+                .map(file -> file.getFileName().toString())
+                .collect(Collectors.toSet());
+
+        var missing = this.provisionedNames.keySet().stream()
+                .filter(fileName -> !present.contains(fileName))
+                .map(dir::resolve)
+                .toList();
+
+        if (!missing.isEmpty()) {
+            this.remove(missing);
+        }
+    }
+
+    /**
+     * Provisions the given service account files.
+     *
+     * @param files the files to provision
+     * @throws IOException if the credential store cannot be written
+     */
+    synchronized void provision(List<Path> files) throws IOException {
+        long parseStart = System.nanoTime();
+        List<Definition> definitions = files.parallelStream()
+                .map(this::parse)
+                .filter(Objects::nonNull)
+                .toList();
+        long parseMillis = (System.nanoTime() - parseStart) / 1_000_000;
+
+        var counts = new int[Outcome.values().length];
+
+        long applyStart = System.nanoTime();
+        try {
+            this.store.runBatch(() -> {
+                // The permission module is not known to be thread safe, so changes are applied sequentially
+                for (Definition definition : definitions) {
+                    counts[this.apply(definition).ordinal()]++;
+                }
+            });
+        } finally {
+            this.saveState();
+        }
+        long applyMillis = (System.nanoTime() - applyStart) / 1_000_000;
+
+        this.logger.atInfo().log(
+                "Provisioned %d service account files (parsed in %d ms, applied and saved in %d ms): %d created, %d updated, %d unchanged, %d deleted, %d failed",
+                files.size(), parseMillis, applyMillis,
+                counts[Outcome.CREATED.ordinal()],
+                counts[Outcome.UPDATED.ordinal()],
+                counts[Outcome.UNCHANGED.ordinal()],
+                counts[Outcome.DELETED.ordinal()],
+                counts[Outcome.FAILED.ordinal()] + files.size() - definitions.size()
+        );
+    }
+
+    /**
+     * Revokes the service accounts provisioned from the given files, which no longer exist.
+     *
+     * @param files the removed files
+     * @throws IOException if the credential store cannot be written
+     */
+    synchronized void remove(List<Path> files) throws IOException {
+        try {
+            this.store.runBatch(() -> {
+                for (Path file : files) {
+                    var name = this.provisionedNames.remove(file.getFileName().toString());
+                    if (name != null) {
+                        this.revoke(name, "its file " + file.getFileName() + " was removed");
+                    }
+                }
+            });
+        } finally {
+            this.saveState();
+        }
+    }
+
+    /**
+     * Revokes an account provisioned from a file, unless another file still provisions it.
+     */
+    private void revoke(String name, String reason) throws IOException {
+        if (this.provisionedNames.containsValue(name)) {
+            return;
+        }
+
+        var uuid = this.store.getUUIDByName(name);
+        if (uuid == null) {
+            return;
+        }
+
+        this.logger.atInfo().log("Revoking service account %s, %s", name, reason);
+        this.delete(uuid);
+    }
+
+    /**
+     * Removes a service account along with all of its groups and permissions.
+     *
+     * @param uuid the service account to remove
+     * @throws IOException if the credential store cannot be written
+     */
+    synchronized void delete(UUID uuid) throws IOException {
+        this.store.deleteUserCredential(uuid);
+
+        for (PermissionProvider provider : PermissionsModule.get().getProviders()) {
+            var groups = Set.copyOf(provider.getGroupsForUser(uuid));
+
+            for (var group : groups) {
+                this.logger.atInfo().log("Removing %s from group %s", uuid.toString(), group);
+                provider.removeUserFromGroup(uuid, group);
+            }
+
+            var permissions = provider.getUserPermissions(uuid);
+            this.logger.atInfo().log("Removing %s from permissions %s", uuid.toString(), permissions);
+            provider.removeUserPermissions(uuid, permissions);
+        }
+
+        this.onPermissionsChanged.accept(uuid);
+    }
+
+    /**
+     * Adds an account created outside of provisioning files to the service account group.
+     *
+     * @param uuid the service account
+     */
+    synchronized void addToServiceAccountGroup(UUID uuid) {
+        PermissionsModule.get().addUserToGroup(uuid, SERVICE_ACCOUNT_GROUP);
+        this.onPermissionsChanged.accept(uuid);
+    }
+
+    static boolean isProvisioningFile(Path file) {
+        return file.getFileName().toString().endsWith(FILE_SUFFIX);
+    }
+
+    static String normalizeName(String name) {
+        return name.startsWith(NAME_PREFIX) ? name : NAME_PREFIX + name;
+    }
+
+    private Definition parse(Path file) {
+        try {
+            Document document = Document.parse(Files.readString(file));
+
+            var name = document.get("Name");
+            if (!(name instanceof String nameString) || nameString.isBlank()) {
+                return this.invalid(file, "Name must be a non-empty string");
+            }
+
+            Object enabled = document.containsKey("Enabled") ? document.get("Enabled") : Boolean.FALSE;
+            if (!(enabled instanceof Boolean)) {
+                return this.invalid(file, "Enabled must be true or false");
+            }
+
+            // Disabled accounts are only deleted, so they don't need a credential
+            var passwordHash = document.get("PasswordHash");
+            if ((Boolean) enabled && (!(passwordHash instanceof String hash) || hash.isBlank())) {
+                return this.invalid(file, "PasswordHash must be set to a bcrypt hash");
+            }
+
+            var groups = document.getList("Groups", String.class);
+            var permissions = document.getList("Permissions", String.class);
+
+            return new Definition(
+                    file,
+                    normalizeName(nameString),
+                    (Boolean) enabled,
+                    (String) passwordHash,
+                    groups != null ? Set.copyOf(groups) : Set.of(),
+                    permissions != null ? Set.copyOf(permissions) : Set.of()
+            );
+        } catch (Exception e) {
+            this.logger.atSevere().withCause(e).log("Failed to parse service account file %s", file.toString());
+            return null;
+        }
+    }
+
+    private Definition invalid(Path file, String reason) {
+        this.logger.atSevere().log("Service account file %s is invalid: %s", file.toString(), reason);
+        return null;
+    }
+
+    private Outcome apply(Definition definition) {
+        var fileName = definition.file().getFileName().toString();
+        var previousName = this.provisionedNames.put(fileName, definition.name());
+
+        try {
+            if (previousName != null && !previousName.equals(definition.name())) {
+                this.revoke(previousName, "its file " + fileName + " now provisions " + definition.name());
+            }
+
+            var uuid = this.store.getUUIDByName(definition.name());
+
+            if (!definition.enabled()) {
+                if (uuid == null) {
+                    return Outcome.UNCHANGED;
+                }
+
+                this.delete(uuid);
+                return Outcome.DELETED;
+            }
+
+            var created = uuid == null;
+            var changed = false;
+
+            if (created) {
+                uuid = UUID.randomUUID();
+            }
+
+            if (created || !definition.passwordHash().equals(this.store.getCredentialHash(uuid))) {
+                this.store.importUserCredential(uuid, definition.name(), definition.passwordHash());
+                changed = true;
+            }
+
+            if (this.applyPermissions(uuid, definition)) {
+                changed = true;
+                this.onPermissionsChanged.accept(uuid);
+            }
+
+            if (created) {
+                return Outcome.CREATED;
+            }
+
+            return changed ? Outcome.UPDATED : Outcome.UNCHANGED;
+        } catch (Exception e) {
+            this.logger.atSevere().withCause(e).log("Failed to import service account file %s", definition.file().toString());
+            return Outcome.FAILED;
+        }
+    }
+
+    private void saveState() throws IOException {
+        var files = new Document();
+        for (Map.Entry<String, String> entry : this.provisionedNames.entrySet()) {
+            files.append(entry.getKey(), entry.getValue());
+        }
+
+        var jsonString = new Document("files", files).toJson(JsonWriterSettings.builder().indent(true).build());
+        var tempPath = this.getTempPath();
+
+        Files.createDirectories(this.statePath.getParent());
+        Files.writeString(tempPath, jsonString);
+
+        try {
+            Files.move(tempPath, this.statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, this.statePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path getTempPath() {
+        return this.statePath.resolveSibling(this.statePath.getFileName() + ".tmp");
+    }
+
+    /**
+     * Brings the groups and permissions of an account in line with its definition.
+     *
+     * @return whether anything was changed
+     */
+    private boolean applyPermissions(UUID uuid, Definition definition) {
+        var desiredGroups = new HashSet<>(definition.groups());
+        desiredGroups.add(SERVICE_ACCOUNT_GROUP);
+
+        var permissionsModule = PermissionsModule.get();
+        var currentGroups = new HashSet<String>();
+        var currentPermissions = new HashSet<String>();
+        var changed = false;
+
+        for (PermissionProvider provider : permissionsModule.getProviders()) {
+            for (var group : Set.copyOf(provider.getGroupsForUser(uuid))) {
+                if (desiredGroups.contains(group)) {
+                    currentGroups.add(group);
+                } else {
+                    provider.removeUserFromGroup(uuid, group);
+                    changed = true;
+                }
+            }
+
+            var permissions = Set.copyOf(provider.getUserPermissions(uuid));
+            var obsolete = new HashSet<>(permissions);
+            obsolete.removeAll(definition.permissions());
+            if (!obsolete.isEmpty()) {
+                provider.removeUserPermissions(uuid, obsolete);
+                changed = true;
+            }
+
+            currentPermissions.addAll(permissions);
+        }
+
+        for (var group : desiredGroups) {
+            if (!currentGroups.contains(group)) {
+                permissionsModule.addUserToGroup(uuid, group);
+                changed = true;
+            }
+        }
+
+        var missingPermissions = new HashSet<>(definition.permissions());
+        missingPermissions.removeAll(currentPermissions);
+        if (!missingPermissions.isEmpty()) {
+            permissionsModule.addUserPermission(uuid, missingPermissions);
+            changed = true;
+        }
+
+        return changed;
+    }
+}
@@ -8,20 +8,33 @@ import net.nitrado.hytale.plugins.webserver.authentication.internal.AuthFilter;
 import net.nitrado.hytale.plugins.webserver.authentication.AuthProvider;
 import net.nitrado.hytale.plugins.webserver.servlets.internal.AuthorizationWrapperServlet;
 import net.nitrado.hytale.plugins.webserver.cert.CertificateProvider;
+import net.nitrado.hytale.plugins.webserver.config.PerformanceConfig;
 import net.nitrado.hytale.plugins.webserver.config.WebServerConfig;
+import net.nitrado.hytale.plugins.webserver.metrics.MetricsRegistry;
 import org.eclipse.jetty.ee10.servlet.ServletContextHandler;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
 import org.eclipse.jetty.ee10.servlet.ServletHolder;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.util.VirtualThreads;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.SessionTrackingMode;
 import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
 import javax.net.ssl.SSLContext;
 import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 
 /**
@@ -37,8 +50,12 @@ final class WebServer {
     private final HytaleLogger logger;
     private final Map<PluginIdentifier, List<String>> pluginToPathSpecs =  new HashMap<>();
     private final Map<PluginIdentifier, AuthProvider[]> pluginToAuthProviders = new HashMap<>();
+    // Changes whenever plugins add or remove servlets, used to invalidate rendered fragments listing them
+    private final AtomicLong routesVersion = new AtomicLong();
+    private final LongAdder activeSessions = new LongAdder();
+    private final LongAdder createdSessions = new LongAdder();
 
-    public WebServer(HytaleLogger logger, WebServerConfig config, Path dataDir) {
+    public WebServer(HytaleLogger logger, WebServerConfig config, Path dataDir, MetricsRegistry metrics) {
         this.logger = logger;
 
         this.context = new ServletContextHandler(ServletContextHandler.SESSIONS);
@@ -55,22 +72,47 @@ final class WebServer {
             sessionHandler.setSecureRequestOnly(false);
         }
 
+        sessionHandler.addEventListener(new HttpSessionListener() {
+            @Override
+            public void sessionCreated(HttpSessionEvent se) {
+                activeSessions.increment();
+                createdSessions.increment();
+            }
+
+            @Override
+            public void sessionDestroyed(HttpSessionEvent se) {
+                activeSessions.decrement();
+            }
+        });
+        metrics.register("sessions.active", this.activeSessions::sum);
+        metrics.register("sessions.created", this.createdSessions::sum);
+
         var addr = new InetSocketAddress(config.getBindHost(), config.getBindPort());
 
         this.logger.atInfo().log("Binding WebServer to " + addr);
 
-        this.server = new Server();
+        var performanceConfig = config.getPerformance();
+        var threadPool = this.createThreadPool(performanceConfig.getThreadPool());
+        this.server = new Server(threadPool);
+
+        metrics.register("threadpool.threads", threadPool::getThreads);
+        metrics.register("threadpool.busy", threadPool::getBusyThreads);
+        metrics.register("threadpool.queue_size", threadPool::getQueueSize);
+
+        var connectorConfig = performanceConfig.getConnector();
 
         ServerConnector connector;
         if (tlsConfig.isInsecure()) {
             this.logger.atWarning().log("TLS is disabled - using insecure plain HTTP!");
-            connector = new ServerConnector(this.server);
+            connector = this.createInsecureConnector(config);
         } else {
             connector = this.createTLSConnector(config, dataDir);
         }
 
         connector.setHost(addr.getHostName());
         connector.setPort(addr.getPort());
+        connector.setIdleTimeout(connectorConfig.getIdleTimeoutMs());
+        connector.setAcceptQueueSize(connectorConfig.getAcceptQueueSize());
 
         this.server.addConnector(connector);
         this.server.setHandler(this.context);
@@ -111,6 +153,7 @@ final class WebServer {
 
         this.pluginToPathSpecs.computeIfAbsent(identifier, k -> new ArrayList<>());
         this.pluginToPathSpecs.get(identifier).add(pathSpec);
+        this.routesVersion.incrementAndGet();
     }
 
     void removeServlet(PluginBase plugin, String pathSpec) throws IllegalPathSpecException {
@@ -127,6 +170,7 @@ final class WebServer {
         this.removeFilters(fullPathSpec, false);
         this.pluginToPathSpecs.computeIfAbsent(identifier, k -> new ArrayList<>());
         this.pluginToPathSpecs.get(identifier).remove(pathSpec);
+        this.routesVersion.incrementAndGet();
     }
 
     void removeServlets(PluginBase plugin) {
@@ -236,6 +280,10 @@ final class WebServer {
         return this.pluginToPathSpecs.keySet();
     }
 
+    long getRoutesVersion() {
+        return this.routesVersion.get();
+    }
+
     void start() throws Exception {
         for (var connector : this.server.getConnectors()) {
             if (connector instanceof ServerConnector sc) {
@@ -253,6 +301,68 @@ final class WebServer {
         }
     }
 
+    QueuedThreadPool createThreadPool(PerformanceConfig.ThreadPoolConfig threadPoolConfig) {
+        var threadPool = new QueuedThreadPool(
+                threadPoolConfig.getMaxThreads(),
+                threadPoolConfig.getMinThreads(),
+                threadPoolConfig.getIdleTimeoutMs()
+        );
+        threadPool.setName("WebServer");
+
+        if (threadPoolConfig.isVirtualThreads()) {
+            if (VirtualThreads.areSupported()) {
+                // Jetty keeps using platform threads for selectors and acceptors, while requests are handled on
+                // virtual threads, so blocking servlets don't occupy platform threads.
+                threadPool.setVirtualThreadsExecutor(VirtualThreads.getNamedVirtualThreadsExecutor("WebServer-virtual"));
+                this.logger.atInfo().log("Handling requests on virtual threads");
+            } else {
+                this.logger.atWarning().log("Virtual threads are not supported by this JVM, using platform threads");
+            }
+        }
+
+        return threadPool;
+    }
+
+    HttpConfiguration createHttpConfiguration(PerformanceConfig.ConnectorConfig connectorConfig) {
+        var httpConfig = new HttpConfiguration();
+        httpConfig.setRequestHeaderSize(connectorConfig.getRequestHeaderSize());
+        httpConfig.setResponseHeaderSize(connectorConfig.getResponseHeaderSize());
+        httpConfig.setOutputBufferSize(connectorConfig.getOutputBufferSize());
+
+        return httpConfig;
+    }
+
+    ServerConnector createInsecureConnector(WebServerConfig config) {
+        var connectorConfig = config.getPerformance().getConnector();
+        var http2Config = config.getPerformance().getHttp2();
+
+        var httpConfig = this.createHttpConfiguration(connectorConfig);
+        var http1 = new HttpConnectionFactory(httpConfig);
+
+        if (!http2Config.isEnabled() || !http2Config.isCleartext()) {
+            return new ServerConnector(this.server,
+                    connectorConfig.getAcceptors(),
+                    connectorConfig.getSelectors(),
+                    http1);
+        }
+
+        // HTTP/1.1 stays the default protocol, clients may upgrade or use h2c with prior knowledge
+        var h2c = new HTTP2CServerConnectionFactory(httpConfig);
+        this.configureHttp2(h2c, http2Config);
+
+        this.logger.atInfo().log("HTTP/2 over cleartext (h2c) enabled");
+
+        return new ServerConnector(this.server,
+                connectorConfig.getAcceptors(),
+                connectorConfig.getSelectors(),
+                http1,
+                h2c);
+    }
+
+    void configureHttp2(AbstractHTTP2ServerConnectionFactory factory, PerformanceConfig.Http2Config http2Config) {
+        factory.setMaxConcurrentStreams(http2Config.getMaxConcurrentStreams());
+    }
+
     ServerConnector createTLSConnector(WebServerConfig config, Path dataDir) {
         SSLContext sslContext;
         try {
@@ -266,15 +376,45 @@ final class WebServer {
         ssl.setSslContext(sslContext);
         ssl.setSniRequired(false);
 
-        HttpConfiguration httpsConfig = new HttpConfiguration();
+        var connectorConfig = config.getPerformance().getConnector();
+
+        HttpConfiguration httpsConfig = this.createHttpConfiguration(connectorConfig);
         SecureRequestCustomizer secureRequestCustomizer = new SecureRequestCustomizer();
         secureRequestCustomizer.setSniRequired(false);
         secureRequestCustomizer.setSniHostCheck(false);
         httpsConfig.addCustomizer(secureRequestCustomizer);
 
+        var http1 = new HttpConnectionFactory(httpsConfig);
+        var http2Config = config.getPerformance().getHttp2();
+
+        if (!http2Config.isEnabled()) {
+            return new ServerConnector(this.server,
+                    connectorConfig.getAcceptors(),
+                    connectorConfig.getSelectors(),
+                    new SslConnectionFactory(ssl, HttpVersion.HTTP_1_1.asString()),
+                    http1);
+        }
+
+        var h2 = new HTTP2ServerConnectionFactory(httpsConfig);
+        this.configureHttp2(h2, http2Config);
+
+        // Negotiate h2 via ALPN, falling back to HTTP/1.1 for clients that don't offer it
+        var alpn = new ALPNServerConnectionFactory();
+        alpn.setDefaultProtocol(http1.getProtocol());
+
+        // HTTP/2 forbids a number of cipher suites, so prefer the ones it allows
+        ssl.setCipherComparator(HTTP2Cipher.COMPARATOR);
+        ssl.setUseCipherSuitesOrder(true);
+
+        this.logger.atInfo().log("HTTP/2 enabled via ALPN");
+
         return new ServerConnector(this.server,
-                new SslConnectionFactory(ssl, HttpVersion.HTTP_1_1.asString()),
-                new HttpConnectionFactory(httpsConfig));
+                connectorConfig.getAcceptors(),
+                connectorConfig.getSelectors(),
+                new SslConnectionFactory(ssl, alpn.getProtocol()),
+                alpn,
+                h2,
+                http1);
     }
 
     SSLContext createSSLContext(WebServerConfig config, Path dataDir) throws Exception {
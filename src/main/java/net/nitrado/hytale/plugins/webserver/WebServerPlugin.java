@@ -1,9 +1,9 @@
 package net.nitrado.hytale.plugins.webserver;
 
 import com.hypixel.hytale.common.plugin.PluginIdentifier;
+import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.server.core.command.system.CommandManager;
 import com.hypixel.hytale.server.core.permissions.PermissionsModule;
-import com.hypixel.hytale.server.core.permissions.provider.PermissionProvider;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
 import com.hypixel.hytale.server.core.plugin.PluginBase;
@@ -14,21 +14,29 @@ import jakarta.servlet.http.HttpServlet;
 import net.nitrado.hytale.plugins.webserver.authentication.AuthProvider;
 import net.nitrado.hytale.plugins.webserver.authentication.internal.AuthFilter;
 import net.nitrado.hytale.plugins.webserver.authentication.internal.BasicAuthProvider;
+import net.nitrado.hytale.plugins.webserver.authentication.internal.BearerTokenAuthProvider;
+import net.nitrado.hytale.plugins.webserver.authentication.internal.BearerTokenSigner;
+import net.nitrado.hytale.plugins.webserver.authentication.internal.LoginRateLimiter;
 import net.nitrado.hytale.plugins.webserver.authentication.internal.SessionAuthProvider;
 import net.nitrado.hytale.plugins.webserver.authentication.store.*;
+import net.nitrado.hytale.plugins.webserver.authorization.PermissionDecisionCache;
 import net.nitrado.hytale.plugins.webserver.commands.WebServerCommand;
+import net.nitrado.hytale.plugins.webserver.config.AuthenticationConfig;
 import net.nitrado.hytale.plugins.webserver.config.WebServerConfig;
+import net.nitrado.hytale.plugins.webserver.metrics.MetricsRegistry;
 import net.nitrado.hytale.plugins.webserver.servlets.internal.IndexServlet;
 import net.nitrado.hytale.plugins.webserver.servlets.internal.LoginServlet;
 import net.nitrado.hytale.plugins.webserver.servlets.internal.LogoutServlet;
+import net.nitrado.hytale.plugins.webserver.servlets.internal.TokenServlet;
 import net.nitrado.hytale.plugins.webserver.servlets.StaticFileServlet;
 import net.nitrado.hytale.plugins.webserver.templates.TemplateEngineFactory;
-import org.bson.Document;
 
 import javax.annotation.Nonnull;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.logging.Level;
 
@@ -66,10 +74,17 @@ public final class WebServerPlugin extends JavaPlugin {
     private CredentialValidator userCredentialValidator;
     private CredentialValidator serviceAccountCredentialValidator;
 
-    private UserCredentialStore userCredentialStore;
-    private UserCredentialStore serviceAccountCredentialStore;
+    private CredentialStore userCredentialStore;
+    private CredentialStore serviceAccountCredentialStore;
     private TemplateEngineFactory templateEngineFactory;
     private LoginCodeStore loginCodeStore;
+    private CredentialHasher credentialHasher;
+    private PermissionDecisionCache permissionCache;
+    private ServiceAccountProvisioner serviceAccountProvisioner;
+    private ProvisioningWatcher provisioningWatcher;
+    private LoginRateLimiter loginRateLimiter;
+    private BearerTokenSigner bearerTokenSigner;
+    private final MetricsRegistry metrics = new MetricsRegistry();
 
     private Path dataDir;
 
@@ -80,8 +95,8 @@ public final class WebServerPlugin extends JavaPlugin {
 
         this.dataDir = getDataDirectory();
 
-        this.templateEngineFactory = new TemplateEngineFactory(this);
-        this.webServer = new WebServer(l.getSubLogger("WebServer"), cfg, dataDir);
+        this.templateEngineFactory = new TemplateEngineFactory(this, cfg.getPerformance().getTemplateCache());
+        this.webServer = new WebServer(l.getSubLogger("WebServer"), cfg, dataDir, this.metrics);
 
         try {
             this.setupAuthStores();
@@ -91,6 +106,10 @@ public final class WebServerPlugin extends JavaPlugin {
         }
 
         this.loginCodeStore = new LoginCodeStore();
+        this.metrics.register("auth.login_codes.active", this.loginCodeStore::getActiveCount);
+        this.metrics.register("auth.login_codes.issued", this.loginCodeStore::getIssuedCount);
+        this.metrics.register("auth.login_codes.redeemed", this.loginCodeStore::getRedeemedCount);
+        this.metrics.register("auth.login_codes.expired", this.loginCodeStore::getExpiredCount);
 
         try {
             this.setupBuiltinRoutes();
@@ -116,6 +135,8 @@ public final class WebServerPlugin extends JavaPlugin {
             getLogger().atSevere().withCause(e).log("Failed to import service accounts for webserver: %s", e.getMessage());
         }
 
+        this.watchServiceAccounts();
+
         try {
             this.webServer.start();
         } catch (Exception e) {
@@ -124,30 +145,164 @@ public final class WebServerPlugin extends JavaPlugin {
         }
     }
 
+    void watchServiceAccounts() {
+        var provisioningConfig = config.get().getAuthentication().getProvisioning();
+        if (!provisioningConfig.isWatchForChanges()) {
+            return;
+        }
+
+        this.provisioningWatcher = new ProvisioningWatcher(
+                getLogger().getSubLogger("ProvisioningWatcher"),
+                this.dataDir.resolve("provisioning"),
+                this.serviceAccountProvisioner,
+                Duration.ofMillis(provisioningConfig.getDebounceMs())
+        );
+
+        try {
+            this.provisioningWatcher.start();
+        } catch (IOException e) {
+            getLogger().atSevere().withCause(e).log("Failed to watch provisioning directory for changes");
+        }
+    }
+
     void setupAnonymousUser() {
         PermissionsModule.get().addUserToGroup(new UUID(0,0), "ANONYMOUS");
     }
 
     void setupCommands() {
-        CommandManager.get().register(new WebServerCommand(this.loginCodeStore));
+        CommandManager.get().register(new WebServerCommand(this.loginCodeStore, this.metrics));
     }
 
     void setupAuthStores() throws IOException {
-        // TODO: Make implementation configurable somehow?
-
         var dataDir = getDataDirectory();
 
-        var serviceAccountStore = new JsonPasswordStore(dataDir.resolve("store/serviceaccounts.json"), getLogger().getSubLogger("ServiceAccountCredentialStore"));
-        serviceAccountStore.load();
+        var hasherConfig = config.get().getAuthentication().getCredentialHasher();
+        this.credentialHasher = new CredentialHasher(hasherConfig.getThreads(), hasherConfig.getQueueSize());
+
+        this.metrics.register("auth.credential_hasher.queue_depth", this.credentialHasher::getQueueDepth);
+        this.metrics.register("auth.credential_hasher.active", this.credentialHasher::getActiveCount);
+        this.metrics.register("auth.credential_hasher.completed", this.credentialHasher::getCompletedCount);
+        this.metrics.register("auth.credential_hasher.rejected", this.credentialHasher::getRejectedCount);
+        this.metrics.register("auth.credential_hasher.wait_time_us", this.credentialHasher::getWaitTimeMicros);
+        this.metrics.register("auth.credential_hasher.work_time_us", this.credentialHasher::getWorkTimeMicros);
 
-        var userStore = new JsonPasswordStore(dataDir.resolve("store/users.json"), getLogger().getSubLogger("UserCredentialStore"));
-        userStore.load();
+        var serviceAccountStore = this.createCredentialStore(dataDir.resolve("store/serviceaccounts"), getLogger().getSubLogger("ServiceAccountCredentialStore"));
+        var userStore = this.createCredentialStore(dataDir.resolve("store/users"), getLogger().getSubLogger("UserCredentialStore"));
 
         this.serviceAccountCredentialStore = serviceAccountStore;
         this.serviceAccountCredentialValidator = serviceAccountStore;
 
+        var cacheConfig = config.get().getAuthentication().getCredentialCache();
+        if (cacheConfig.isEnabled()) {
+            var cachingValidator = new CachingCredentialValidator(
+                    serviceAccountStore,
+                    Duration.ofSeconds(cacheConfig.getTtlSeconds()),
+                    cacheConfig.getMaxEntries()
+            );
+            serviceAccountStore.addChangeListener(cachingValidator);
+
+            this.metrics.register("auth.credential_cache.hits", cachingValidator::getHits);
+            this.metrics.register("auth.credential_cache.misses", cachingValidator::getMisses);
+            this.metrics.register("auth.credential_cache.size", cachingValidator::size);
+
+            this.serviceAccountCredentialValidator = cachingValidator;
+        }
+
         this.userCredentialStore = userStore;
         this.userCredentialValidator = userStore;
+
+        this.serviceAccountProvisioner = new ServiceAccountProvisioner(
+                getLogger().getSubLogger("ServiceAccountProvisioner"),
+                serviceAccountStore,
+                dataDir.resolve("store/provisioned.json"),
+                this::invalidatePermissions
+        );
+        this.serviceAccountProvisioner.load();
+
+        var rateLimitConfig = config.get().getAuthentication().getRateLimit();
+        if (rateLimitConfig.isEnabled()) {
+            this.loginRateLimiter = new LoginRateLimiter(
+                    rateLimitConfig.getIpBurst(),
+                    rateLimitConfig.getIpPerMinute(),
+                    rateLimitConfig.getAccountBurst(),
+                    rateLimitConfig.getAccountPerMinute(),
+                    rateLimitConfig.getMaxTrackedKeys()
+            );
+
+            this.metrics.register("auth.rate_limit.rejected", this.loginRateLimiter::getRejectedCount);
+            this.metrics.register("auth.rate_limit.tracked", this.loginRateLimiter::getTrackedCount);
+        }
+
+        var bearerTokensConfig = config.get().getAuthentication().getBearerTokens();
+        if (bearerTokensConfig.isEnabled()) {
+            this.bearerTokenSigner = BearerTokenSigner.fromKeyFile(
+                    dataDir.resolve("store/token.key"),
+                    Duration.ofSeconds(bearerTokensConfig.getTtlSeconds()),
+                    serviceAccountStore
+            );
+
+            this.metrics.register("auth.bearer_tokens.issued", this.bearerTokenSigner::getIssuedCount);
+            this.metrics.register("auth.bearer_tokens.rejected", this.bearerTokenSigner::getRejectedCount);
+        }
+
+        var permissionCacheConfig = config.get().getAuthentication().getPermissionCache();
+        if (permissionCacheConfig.isEnabled()) {
+            this.permissionCache = new PermissionDecisionCache(
+                    Duration.ofSeconds(permissionCacheConfig.getTtlSeconds()),
+                    permissionCacheConfig.getMaxEntries()
+            );
+
+            this.metrics.register("auth.permission_cache.hits", this.permissionCache::getHits);
+            this.metrics.register("auth.permission_cache.misses", this.permissionCache::getMisses);
+            this.metrics.register("auth.permission_cache.size", this.permissionCache::size);
+        }
+    }
+
+    /**
+     * Creates the configured type of credential store.
+     *
+     * @param basePath the path of the store without file extension
+     * @param logger   the logger for the store
+     */
+    private CredentialStore createCredentialStore(Path basePath, HytaleLogger logger) throws IOException {
+        var storeConfig = config.get().getAuthentication().getCredentialStore();
+        var jsonPath = basePath.resolveSibling(basePath.getFileName() + ".json");
+
+        if (AuthenticationConfig.CredentialStoreConfig.TYPE_MVSTORE.equalsIgnoreCase(storeConfig.getType())) {
+            var mvPath = basePath.resolveSibling(basePath.getFileName() + ".mv.db");
+            // Only a new database is migrated. An empty existing one may have had all its accounts deleted,
+            // which must not bring back the accounts from the JSON file.
+            var migrate = !Files.exists(mvPath) && Files.exists(jsonPath);
+
+            var store = new MVStoreCredentialStore(mvPath, logger, this.credentialHasher);
+
+            // Carry over accounts when switching from the JSON store
+            if (migrate) {
+                try {
+                    var jsonStore = new JsonPasswordStore(jsonPath, logger, this.credentialHasher);
+                    jsonStore.load();
+                    store.importFrom(jsonStore);
+
+                    logger.atInfo().log("Imported %d accounts from %s", jsonStore.listUsers().size(), jsonPath.getFileName());
+                } catch (IOException | RuntimeException e) {
+                    // Retried on the next start
+                    store.close();
+                    Files.deleteIfExists(mvPath);
+                    throw e;
+                }
+            }
+
+            return store;
+        }
+
+        if (!AuthenticationConfig.CredentialStoreConfig.TYPE_JSON.equalsIgnoreCase(storeConfig.getType())) {
+            logger.atWarning().log("Unknown credential store type %s, using %s", storeConfig.getType(), AuthenticationConfig.CredentialStoreConfig.TYPE_JSON);
+        }
+
+        var store = new JsonPasswordStore(jsonPath, logger, this.credentialHasher, Duration.ofMillis(storeConfig.getFlushDelayMs()));
+        store.load();
+
+        return store;
     }
 
     void setupBuiltinRoutes() throws IOException {
@@ -160,12 +315,23 @@ public final class WebServerPlugin extends JavaPlugin {
                     this,
                     getLogger().getSubLogger("LoginServlet"),
                     this.userCredentialStore,
+                    this.credentialHasher,
                     this.userCredentialValidator,
-                    this.loginCodeStore
+                    this.loginCodeStore,
+                    this.loginRateLimiter
             ), "/login", new AuthFilter(getDefaultAuthProviders()));
 
             this.webServer.addServlet(
                     new LogoutServlet(getLogger().getSubLogger("LogoutServlet")), "/logout", new AuthFilter(getDefaultAuthProviders()));
+
+            if (this.bearerTokenSigner != null) {
+                // Tokens are only handed out in exchange for a service account's credential
+                var validator = new CombinedCredentialValidator();
+                validator.add(this.serviceAccountCredentialValidator);
+
+                this.webServer.addServlet(
+                        new TokenServlet(this.bearerTokenSigner), "/token", new AuthFilter(new BasicAuthProvider(validator, this.permissionCache, this.loginRateLimiter)));
+            }
         } catch (IllegalPathSpecException e) {
             // we don't make mistakes
         }
@@ -174,6 +340,26 @@ public final class WebServerPlugin extends JavaPlugin {
     @Override
     protected void shutdown() {
         this.webServer.stop();
+        this.templateEngineFactory.release(this);
+
+        if (this.provisioningWatcher != null) {
+            try {
+                this.provisioningWatcher.close();
+            } catch (IOException e) {
+                getLogger().atSevere().withCause(e).log("Failed to stop watching provisioning directory");
+            }
+        }
+
+        this.closeStore(this.serviceAccountCredentialStore);
+        this.closeStore(this.userCredentialStore);
+
+        if (this.loginCodeStore != null) {
+            this.loginCodeStore.shutdown();
+        }
+
+        if (this.credentialHasher != null) {
+            this.credentialHasher.shutdown();
+        }
     }
 
     /**
@@ -182,6 +368,8 @@ public final class WebServerPlugin extends JavaPlugin {
      * The returned array contains providers that are tried in order:
      * <ol>
      *   <li>{@link SessionAuthProvider} - authenticates via HTTP session cookies</li>
+     *   <li>{@link BearerTokenAuthProvider} - authenticates via bearer tokens issued by the
+     *       {@code /token} endpoint, if enabled</li>
      *   <li>{@link BasicAuthProvider} - authenticates via HTTP Basic Authentication using
      *       credentials from service account store</li>
      * </ol>
@@ -193,9 +381,17 @@ public final class WebServerPlugin extends JavaPlugin {
         var combined = new CombinedCredentialValidator();
         combined.add(this.serviceAccountCredentialValidator);
 
+        var session = new SessionAuthProvider(getLogger().getSubLogger("SessionAuthProvider"), this.permissionCache);
+        var basic = new BasicAuthProvider(combined, this.permissionCache, this.loginRateLimiter);
+
+        if (this.bearerTokenSigner == null) {
+            return new AuthProvider[]{session, basic};
+        }
+
         return new AuthProvider[]{
-                new SessionAuthProvider(getLogger().getSubLogger("SessionAuthProvider")),
-                new BasicAuthProvider(combined),
+                session,
+                new BearerTokenAuthProvider(this.bearerTokenSigner, this.permissionCache),
+                basic,
         };
     }
 
@@ -203,9 +399,10 @@ public final class WebServerPlugin extends JavaPlugin {
      * Imports all service accounts from JSON files in the provisioning directory.
      * <p>
      * This method scans the {@code provisioning/} directory under the plugin's data directory
-     * for files matching the pattern {@code *.serviceaccount.json}. Each file is parsed and
-     * the service account is created or updated. If a service account already exists, it is
-     * deleted and recreated to ensure permissions and groups are reset.
+     * for files matching the pattern {@code *.serviceaccount.json}. All files are parsed first,
+     * then each service account is created, updated or deleted so that its credential, groups and
+     * permissions match its file exactly. Accounts that already match are left untouched, and
+     * accounts whose file was removed since they were provisioned are revoked.
      * </p>
      * <p>
      * Service account JSON files should contain:
@@ -227,16 +424,7 @@ public final class WebServerPlugin extends JavaPlugin {
             Files.createDirectory(dir);
         }
 
-        Files.list(dir).forEach(file -> {
-            if (file.getFileName().toString().endsWith(".serviceaccount.json")) {
-                getLogger().atInfo().log("Importing service account file %s", file.getFileName());
-                try {
-                    this.importServiceAccount(file);
-                } catch (Exception e) {
-                    this.getLogger().atSevere().withCause(e).log("Failed to import service account file %s", file.toString());
-                }
-            }
-        });
+        this.serviceAccountProvisioner.provisionAll(dir);
     }
 
     /**
@@ -308,7 +496,7 @@ public final class WebServerPlugin extends JavaPlugin {
      * <p>
      * This method removes all servlets and their associated filters that were
      * registered by the specified plugin, including the authentication filters
-     * for the plugin's path prefix.
+     * for the plugin's path prefix, and discards the plugin's template engine.
      * </p>
      * <p>
      * Plugins should call this method as part of their {@code shutdown()} method.
@@ -318,6 +506,7 @@ public final class WebServerPlugin extends JavaPlugin {
      */
     public void removeServlets(@Nonnull PluginBase plugin) {
         getWebServer().removeServlets(plugin);
+        this.templateEngineFactory.release(plugin);
     }
 
     /**
@@ -334,10 +523,31 @@ public final class WebServerPlugin extends JavaPlugin {
         return this.templateEngineFactory;
     }
 
+    /**
+     * Returns the registry holding the web server's counters and gauges.
+     *
+     * @return the metrics registry
+     */
+    public MetricsRegistry getMetrics() {
+        return this.metrics;
+    }
+
     public Set<PluginIdentifier> getRegisteredPlugins() {
         return this.webServer.getRegisteredPlugins();
     }
 
+    /**
+     * Returns a version number that changes whenever a plugin adds or removes servlets.
+     * <p>
+     * Output derived from {@link #getRegisteredPlugins()} can be cached until this changes.
+     * </p>
+     *
+     * @return the current version of the registered routes
+     */
+    public long getRoutesVersion() {
+        return this.webServer.getRoutesVersion();
+    }
+
     UUID createServiceAccount(String name, String password) throws IOException {
         UUID uuid = UUID.randomUUID();
 
@@ -347,7 +557,7 @@ public final class WebServerPlugin extends JavaPlugin {
 
         try {
             this.serviceAccountCredentialStore.setUserCredential(uuid, name, password);
-            PermissionsModule.get().addUserToGroup(uuid, "SERVICE_ACCOUNT");
+            this.serviceAccountProvisioner.addToServiceAccountGroup(uuid);
             return uuid;
 
         } catch (IOException e) {
@@ -365,7 +575,7 @@ public final class WebServerPlugin extends JavaPlugin {
 
         try {
             this.serviceAccountCredentialStore.importUserCredential(uuid, name, passwordHash);
-            PermissionsModule.get().addUserToGroup(uuid, "SERVICE_ACCOUNT");
+            this.serviceAccountProvisioner.addToServiceAccountGroup(uuid);
             return uuid;
 
         } catch (IOException e) {
@@ -374,52 +584,9 @@ public final class WebServerPlugin extends JavaPlugin {
         }
     }
 
-    private void importServiceAccount(Path file) throws IOException {
-        String jsonString = Files.readString(file);
-        Document document = Document.parse(jsonString);
-
-        var name = document.getString("Name");
-
-        // Delete the service account every time to also reset its permissions and groups
-        this.deleteServiceAccount(name);
-
-        var enabled = document.getBoolean("Enabled");
-        if (!enabled) {
-            return;
-        }
-
-        var passwordHash = document.getString("PasswordHash");
-        this.createServiceAccountBcrypt(name, passwordHash);
-        var uuid = this.serviceAccountCredentialStore.getUUIDByName(name);
-
-        var groups = document.getList("Groups", String.class);
-        var permissions = document.getList("Permissions", String.class);
-
-        for (String group : groups) {
-            PermissionsModule.get().addUserToGroup(uuid, group);
-        }
-
-        PermissionsModule.get().addUserPermission(uuid, Set.copyOf(permissions));
-    }
-
     void deleteServiceAccount(UUID uuid) throws IOException {
         try {
-            this.serviceAccountCredentialStore.deleteUserCredential(uuid);
-            var perm = PermissionsModule.get();
-
-            for (PermissionProvider provider : perm.getProviders()) {
-                var groups = Set.copyOf(provider.getGroupsForUser(uuid));
-
-                for (var group : groups) {
-                    getLogger().atInfo().log("Removing %s from group %s", uuid.toString(), group);
-                    provider.removeUserFromGroup(uuid, group);
-                }
-
-                var permissions = provider.getUserPermissions(uuid);
-                getLogger().atInfo().log("Removing %s from permissions %s", uuid.toString(), permissions);
-                provider.removeUserPermissions(uuid, permissions);
-            }
-
+            this.serviceAccountProvisioner.delete(uuid);
         } catch (IOException e) {
             getLogger().at(Level.SEVERE).log("failed to delete service account: %s", e.getMessage());
             throw e;
@@ -435,6 +602,24 @@ public final class WebServerPlugin extends JavaPlugin {
         this.deleteServiceAccount(uuid);
     }
 
+    private void closeStore(CredentialStore store) {
+        if (!(store instanceof Closeable closeable)) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            getLogger().atSevere().withCause(e).log("Failed to write pending credential store changes");
+        }
+    }
+
+    private void invalidatePermissions(UUID uuid) {
+        if (this.permissionCache != null) {
+            this.permissionCache.invalidate(uuid);
+        }
+    }
+
     private WebServer getWebServer() {
         return webServer;
     }
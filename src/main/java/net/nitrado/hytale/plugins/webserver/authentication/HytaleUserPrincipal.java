@@ -2,11 +2,14 @@ package net.nitrado.hytale.plugins.webserver.authentication;
 
 import com.hypixel.hytale.server.core.permissions.PermissionHolder;
 import com.hypixel.hytale.server.core.permissions.PermissionsModule;
+import net.nitrado.hytale.plugins.webserver.authorization.PermissionDecisionCache;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.security.Principal;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents an authenticated user in the Hytale web server context.
@@ -25,17 +28,36 @@ import java.util.UUID;
  * }
  * }</pre>
  * </p>
+ * <p>
+ * Permission decisions are memoized for the lifetime of the principal, which is a single request for
+ * principals created by the built-in authentication providers.
+ * </p>
  */
 public class HytaleUserPrincipal implements Principal, PermissionHolder {
 
     static UUID anonymousUserUuid = new UUID(0,0);
 
+    private record PermissionKey(String permission, Boolean defaultValue) {}
+
     private final UUID uuid;
     private final String name;
+    private final PermissionDecisionCache permissionCache;
+    private final Map<PermissionKey, Boolean> decisions = new ConcurrentHashMap<>();
 
     public HytaleUserPrincipal(@Nonnull UUID uuid, @Nullable String name) {
+        this(uuid, name, null);
+    }
+
+    /**
+     * @param uuid            the user's UUID
+     * @param name            the user's name
+     * @param permissionCache a cache shared across requests to resolve permissions through, or {@code null}
+     *                        to resolve them through {@link PermissionsModule} directly
+     */
+    public HytaleUserPrincipal(@Nonnull UUID uuid, @Nullable String name, @Nullable PermissionDecisionCache permissionCache) {
         this.uuid = uuid;
         this.name = name;
+        this.permissionCache = permissionCache;
     }
 
     /**
@@ -57,12 +79,24 @@ public class HytaleUserPrincipal implements Principal, PermissionHolder {
 
     @Override
     public boolean hasPermission(@Nonnull String s) {
-        return PermissionsModule.get().hasPermission(uuid, s);
+        return decisions.computeIfAbsent(new PermissionKey(s, null), this::resolvePermission);
     }
 
     @Override
     public boolean hasPermission(@Nonnull String s, boolean b) {
-        return PermissionsModule.get().hasPermission(uuid, s, b);
+        return decisions.computeIfAbsent(new PermissionKey(s, b), this::resolvePermission);
+    }
+
+    private boolean resolvePermission(PermissionKey key) {
+        if (permissionCache != null) {
+            return key.defaultValue() == null
+                    ? permissionCache.hasPermission(uuid, key.permission())
+                    : permissionCache.hasPermission(uuid, key.permission(), key.defaultValue());
+        }
+
+        return key.defaultValue() == null
+                ? PermissionsModule.get().hasPermission(uuid, key.permission())
+                : PermissionsModule.get().hasPermission(uuid, key.permission(), key.defaultValue());
     }
 
     public static HytaleUserPrincipal getAnonymous() {
@@ -4,7 +4,9 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import net.nitrado.hytale.plugins.webserver.authentication.AuthProvider;
 import net.nitrado.hytale.plugins.webserver.authentication.HytaleUserPrincipal;
+import net.nitrado.hytale.plugins.webserver.authentication.store.CredentialHasherOverloadedException;
 import net.nitrado.hytale.plugins.webserver.authentication.store.CredentialValidator;
+import net.nitrado.hytale.plugins.webserver.authorization.PermissionDecisionCache;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
@@ -12,9 +14,21 @@ import java.util.UUID;
 
 public final class BasicAuthProvider implements AuthProvider {
     protected final CredentialValidator credentialValidator;
+    private final PermissionDecisionCache permissionCache;
+    private final LoginRateLimiter rateLimiter;
 
     public BasicAuthProvider(CredentialValidator credentialValidator) {
+        this(credentialValidator, null);
+    }
+
+    public BasicAuthProvider(CredentialValidator credentialValidator, PermissionDecisionCache permissionCache) {
+        this(credentialValidator, permissionCache, null);
+    }
+
+    public BasicAuthProvider(CredentialValidator credentialValidator, PermissionDecisionCache permissionCache, LoginRateLimiter rateLimiter) {
         this.credentialValidator = credentialValidator;
+        this.permissionCache = permissionCache;
+        this.rateLimiter = rateLimiter;
     }
 
     @Override
@@ -41,6 +55,16 @@ public final class BasicAuthProvider implements AuthProvider {
         String username = credentials.substring(0, colonIndex);
         String password = credentials.substring(colonIndex + 1);
 
+        if (rateLimiter != null) {
+            long retryAfter = rateLimiter.acquire(req.getRemoteAddr(), username);
+            if (retryAfter > 0) {
+                // Rejected before verifying, so guessing doesn't cost a BCrypt verification
+                res.setStatus(429);
+                res.setHeader("Retry-After", Long.toString(retryAfter));
+                return new AuthResult(AuthResultType.CHALLENGE, null);
+            }
+        }
+
         UUID uuid = null;
 
         try {
@@ -50,18 +74,38 @@ public final class BasicAuthProvider implements AuthProvider {
         }
 
         CredentialValidator.ValidationResult result;
-        // if username is a UUID, treat is as such
-        if (uuid == null) {
-            result = credentialValidator.validateCredential(username, password);
-        } else {
-            result = credentialValidator.validateCredential(uuid, password);
+        try {
+            // if username is a UUID, treat is as such
+            if (uuid == null) {
+                result = credentialValidator.validateCredential(username, password);
+            } else {
+                result = credentialValidator.validateCredential(uuid, password);
+            }
+        } catch (CredentialHasherOverloadedException e) {
+            if (rateLimiter != null) {
+                rateLimiter.release(req.getRemoteAddr(), username);
+            }
+
+            // Too many verifications in flight, reject fast instead of tying up the request thread
+            res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            res.setHeader("Retry-After", "1");
+            return new AuthResult(AuthResultType.CHALLENGE, null);
         }
 
         if (result == null) {
+            // The attempt reserved with the rate limiter stays taken
+            if (rateLimiter != null) {
+                rateLimiter.recordFailure(req.getRemoteAddr(), username);
+            }
+
             return new AuthResult(AuthResultType.FAILURE, null);
         }
 
-        return new AuthResult(AuthResultType.SUCCESS, new HytaleUserPrincipal(result.uuid(), result.username()));
+        if (rateLimiter != null) {
+            rateLimiter.release(req.getRemoteAddr(), username);
+        }
+
+        return new AuthResult(AuthResultType.SUCCESS, new HytaleUserPrincipal(result.uuid(), result.username(), permissionCache));
     }
 
     @Override
@@ -0,0 +1,44 @@
+package net.nitrado.hytale.plugins.webserver.authentication.internal;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.nitrado.hytale.plugins.webserver.authentication.AuthProvider;
+import net.nitrado.hytale.plugins.webserver.authentication.HytaleUserPrincipal;
+import net.nitrado.hytale.plugins.webserver.authorization.PermissionDecisionCache;
+
+/**
+ * Authentication provider that handles bearer tokens issued by the {@code /token} endpoint.
+ * <p>
+ * <strong>Internal:</strong> Consumers receive a pre-configured instance via
+ * {@link net.nitrado.hytale.plugins.webserver.WebServerPlugin#getDefaultAuthProviders()}.
+ * </p>
+ */
+public final class BearerTokenAuthProvider implements AuthProvider {
+
+    private final BearerTokenSigner signer;
+    private final PermissionDecisionCache permissionCache;
+
+    public BearerTokenAuthProvider(BearerTokenSigner signer, PermissionDecisionCache permissionCache) {
+        this.signer = signer;
+        this.permissionCache = permissionCache;
+    }
+
+    @Override
+    public AuthResult authenticate(HttpServletRequest req, HttpServletResponse res) {
+        String authHeader = req.getHeader("Authorization");
+
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return new AuthResult(AuthResultType.NONE, null);
+        }
+
+        var claims = signer.verify(authHeader.substring("Bearer ".length()).trim());
+        if (claims == null) {
+            // Lets clients tell an expired or revoked token from a missing one, see RFC 6750
+            res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            res.setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\"");
+            return new AuthResult(AuthResultType.CHALLENGE, null);
+        }
+
+        return new AuthResult(AuthResultType.SUCCESS, new HytaleUserPrincipal(claims.uuid(), claims.name(), permissionCache));
+    }
+}
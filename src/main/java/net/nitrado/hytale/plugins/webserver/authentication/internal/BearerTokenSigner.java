@@ -0,0 +1,239 @@
+package net.nitrado.hytale.plugins.webserver.authentication.internal;
+
+import net.nitrado.hytale.plugins.webserver.authentication.store.CredentialStore;
+import org.bson.Document;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Issues and verifies short-lived bearer tokens, in the form of HMAC-SHA256 signed JSON Web Tokens.
+ * <p>
+ * Tokens carry the account's UUID and name, so verifying them needs no BCrypt verification. Every server sharing
+ * the same key file accepts the same tokens.
+ * </p>
+ * <p>
+ * Tokens also carry a keyed fingerprint of the account's stored credential hash, which is compared with the
+ * store's current hash on every verification. When the account's credential changes or the account is deleted,
+ * tokens issued for it before are rejected, even if they have not expired yet and even across restarts.
+ * </p>
+ * <p>
+ * <strong>Internal:</strong> Used by the {@code /token} endpoint and {@link BearerTokenAuthProvider}.
+ * </p>
+ */
+public final class BearerTokenSigner {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final String HEADER = ENCODER.encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+    private static final int CREDENTIAL_FINGERPRINT_BYTES = 16;
+
+    /**
+     * The verified contents of a token.
+     */
+    public record Claims(UUID uuid, String name, long expiresAt) {}
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final CredentialStore credentialStore;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param key             the signing key
+     * @param ttl             how long issued tokens are valid
+     * @param credentialStore the store holding the accounts tokens are issued for
+     */
+    public BearerTokenSigner(byte[] key, Duration ttl, CredentialStore credentialStore) {
+        this.key = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.ttl = ttl;
+        this.credentialStore = credentialStore;
+    }
+
+    /**
+     * Creates a signer using the key in the given file, generating a new random key if it doesn't exist yet.
+     * <p>
+     * A new key file is only readable by its owner, where the file system supports it, and is written
+     * atomically, so a partially written key is never read back.
+     * </p>
+     *
+     * @param keyFile         the file holding the base64 encoded key
+     * @param ttl             how long issued tokens are valid
+     * @param credentialStore the store holding the accounts tokens are issued for
+     */
+    public static BearerTokenSigner fromKeyFile(Path keyFile, Duration ttl, CredentialStore credentialStore) throws IOException {
+        if (Files.exists(keyFile)) {
+            return new BearerTokenSigner(Base64.getDecoder().decode(Files.readString(keyFile).trim()), ttl, credentialStore);
+        }
+
+        var key = new byte[32];
+        new SecureRandom().nextBytes(key);
+
+        Files.createDirectories(keyFile.getParent());
+
+        Path tempPath;
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            tempPath = Files.createTempFile(keyFile.getParent(), keyFile.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            tempPath = Files.createTempFile(keyFile.getParent(), keyFile.getFileName().toString(), ".tmp");
+        }
+
+        try {
+            Files.writeString(tempPath, Base64.getEncoder().encodeToString(key));
+
+            try {
+                Files.move(tempPath, keyFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, keyFile);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        return new BearerTokenSigner(key, ttl, credentialStore);
+    }
+
+    public Duration getTtl() {
+        return this.ttl;
+    }
+
+    public long getIssuedCount() {
+        return this.issued.sum();
+    }
+
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * Issues a token for an account.
+     *
+     * @param uuid the account's UUID
+     * @param name the account's name, may be null
+     * @return the signed token, or null if the account doesn't exist in the credential store
+     */
+    public String issue(UUID uuid, String name) {
+        var fingerprint = this.credentialFingerprint(uuid);
+        if (fingerprint == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+
+        var payload = new Document()
+                .append("sub", uuid.toString())
+                .append("iat", now)
+                .append("exp", now + this.ttl.toSeconds())
+                .append("cv", ENCODER.encodeToString(fingerprint));
+        if (name != null) {
+            payload.append("name", name);
+        }
+
+        var signingInput = HEADER + "." + ENCODER.encodeToString(payload.toJson().getBytes(StandardCharsets.UTF_8));
+
+        this.issued.increment();
+
+        return signingInput + "." + ENCODER.encodeToString(this.sign(signingInput));
+    }
+
+    /**
+     * Verifies a token.
+     *
+     * @param token the token
+     * @return the token's claims, or null if it is malformed, has an invalid signature, has expired or was revoked
+     */
+    public Claims verify(String token) {
+        var claims = this.parse(token);
+        if (claims == null) {
+            this.rejected.increment();
+        }
+
+        return claims;
+    }
+
+    private Claims parse(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        int payloadStart = token.indexOf('.');
+        if (payloadStart < 0 || signatureStart <= payloadStart) {
+            return null;
+        }
+
+        var signingInput = token.substring(0, signatureStart);
+        if (!signingInput.startsWith(HEADER + ".")) {
+            return null;
+        }
+
+        try {
+            var signature = DECODER.decode(token.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(signature, this.sign(signingInput))) {
+                return null;
+            }
+
+            var payload = Document.parse(new String(DECODER.decode(token.substring(payloadStart + 1, signatureStart)), StandardCharsets.UTF_8));
+
+            long now = System.currentTimeMillis() / 1000;
+            long expiresAt = ((Number) payload.get("exp")).longValue();
+            if (expiresAt <= now) {
+                return null;
+            }
+
+            var uuid = UUID.fromString(payload.getString("sub"));
+
+            // Rejects tokens of deleted accounts and those issued before the credential changed
+            var fingerprint = this.credentialFingerprint(uuid);
+            if (fingerprint == null || !MessageDigest.isEqual(fingerprint, DECODER.decode(payload.getString("cv")))) {
+                return null;
+            }
+
+            return new Claims(uuid, payload.getString("name"), expiresAt);
+        } catch (RuntimeException e) {
+            // Malformed token
+            return null;
+        }
+    }
+
+    /**
+     * Derives a fingerprint of the account's current credential hash, keyed so tokens reveal nothing about it.
+     *
+     * @return the fingerprint, or null if the account doesn't exist
+     */
+    private byte[] credentialFingerprint(UUID uuid) {
+        var credentialHash = this.credentialStore.getCredentialHash(uuid);
+        if (credentialHash == null) {
+            return null;
+        }
+
+        return Arrays.copyOf(this.sign("cv:" + credentialHash), CREDENTIAL_FINGERPRINT_BYTES);
+    }
+
+    private byte[] sign(String input) {
+        try {
+            var mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(this.key);
+
+            return mac.doFinal(input.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is required to be available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package net.nitrado.hytale.plugins.webserver.authentication.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Limits failed login attempts per client IP and per account using token buckets.
+ * <p>
+ * Every attempt reserves a token from the bucket of the client's IP before any credential is verified. Failed
+ * attempts keep their token, successful ones give it back via {@link #release(String, String)}, so clients
+ * authenticating on every request are never limited as long as their credentials are valid. Reserving up front
+ * means concurrent attempts from one IP can't all pass before the first failure is counted. Once an IP's bucket
+ * is empty, its attempts are rejected by {@link #acquire(String, String)}, so neither CPU-heavy BCrypt
+ * verifications nor login code lookups happen for them. Buckets refill continuously, so the limit applies to a
+ * sliding window rather than fixed intervals.
+ * </p>
+ * <p>
+ * The bucket of an account is only charged by failures, see {@link #recordFailure(String, String)}. Once it is
+ * empty, attempts for the account are only accepted from IPs without recent failures, i.e. with a full bucket.
+ * This limits guessing from many IPs, while a client that knows the credential, such as a service account's
+ * automation, isn't locked out by others failing to log in to its account.
+ * </p>
+ * <p>
+ * When the maximum number of tracked keys is reached and all of them are still limited, further keys share a
+ * single overflow bucket, so filling the table can't be used to escape the limit.
+ * </p>
+ * <p>
+ * <strong>Internal:</strong> Configured via the {@code Authentication.RateLimit} section of the config.
+ * </p>
+ */
+public final class LoginRateLimiter {
+
+    private final Buckets ipBuckets;
+    private final Buckets accountBuckets;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param ipBurst            the number of failed attempts an IP may make in quick succession
+     * @param ipPerMinute        the number of failed attempts per minute an IP regains
+     * @param accountBurst       the number of failed attempts an account may receive in quick succession
+     * @param accountPerMinute   the number of failed attempts per minute an account regains
+     * @param maxTrackedKeys     the maximum number of IPs and of accounts to track, bounding memory usage
+     */
+    public LoginRateLimiter(int ipBurst, double ipPerMinute, int accountBurst, double accountPerMinute, int maxTrackedKeys) {
+        this.ipBuckets = new Buckets(ipBurst, ipPerMinute, maxTrackedKeys);
+        this.accountBuckets = new Buckets(accountBurst, accountPerMinute, maxTrackedKeys);
+    }
+
+    /**
+     * Reserves a login attempt. If the attempt doesn't fail, it has to be given back with
+     * {@link #release(String, String)}, a failed attempt keeps it and has to be reported with
+     * {@link #recordFailure(String, String)}.
+     *
+     * @param ip      the client's IP address
+     * @param account the account the attempt is for, or null if not known before verification
+     * @return 0 if the attempt is allowed and was reserved, otherwise the number of seconds until it would be
+     */
+    public long acquire(String ip, String account) {
+        // Checked before taking a token, as taking one makes every bucket non-full
+        boolean ipWithoutFailures = this.ipBuckets.isFull(ip);
+
+        long retryAfter = this.ipBuckets.tryTake(ip);
+
+        if (retryAfter == 0 && account != null && !ipWithoutFailures) {
+            retryAfter = this.accountBuckets.secondsUntilAvailable(normalizeAccount(account));
+            if (retryAfter > 0) {
+                this.ipBuckets.refund(ip);
+            }
+        }
+
+        if (retryAfter > 0) {
+            this.rejected.increment();
+        }
+
+        return retryAfter;
+    }
+
+    /**
+     * Gives back an attempt reserved by {@link #acquire(String, String)} that didn't fail.
+     *
+     * @param ip      the client's IP address
+     * @param account the account passed to {@link #acquire(String, String)}
+     */
+    public void release(String ip, String account) {
+        this.ipBuckets.refund(ip);
+    }
+
+    /**
+     * Charges a failed attempt reserved by {@link #acquire(String, String)} to the account it was for.
+     *
+     * @param ip      the client's IP address
+     * @param account the account passed to {@link #acquire(String, String)}, or null if not known
+     */
+    public void recordFailure(String ip, String account) {
+        if (account != null) {
+            this.accountBuckets.tryTake(normalizeAccount(account));
+        }
+    }
+
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    public int getTrackedCount() {
+        return this.ipBuckets.size() + this.accountBuckets.size();
+    }
+
+    private static String normalizeAccount(String account) {
+        return account.toLowerCase();
+    }
+
+    /**
+     * Token buckets by key. Buckets are immutable and replaced atomically per key, so no global lock is needed.
+     */
+    private static final class Buckets {
+
+        private record Bucket(double tokens, long updatedAt) {}
+
+        private final int capacity;
+        private final double tokensPerNano;
+        private final int maxKeys;
+        private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+        // Shared by all keys that can't be tracked individually because the map is full
+        private final AtomicReference<Bucket> overflow;
+
+        Buckets(int capacity, double perMinute, int maxKeys) {
+            this.capacity = capacity;
+            this.tokensPerNano = perMinute / TimeUnit.MINUTES.toNanos(1);
+            this.maxKeys = maxKeys;
+            this.overflow = new AtomicReference<>(new Bucket(capacity, System.nanoTime()));
+        }
+
+        /**
+         * Takes a token if one is available.
+         *
+         * @return 0 if a token was taken, otherwise the number of seconds until one is available
+         */
+        long tryTake(String key) {
+            var retryAfter = new long[1];
+
+            UnaryOperator<Bucket> take = bucket -> {
+                long now = System.nanoTime();
+                double tokens = bucket == null ? this.capacity : this.refill(bucket, now);
+
+                if (tokens < 1) {
+                    retryAfter[0] = this.secondsUntilAvailable(tokens);
+                    return bucket;
+                }
+
+                retryAfter[0] = 0;
+                return new Bucket(tokens - 1, now);
+            };
+
+            if (!this.track(key)) {
+                this.overflow.updateAndGet(take);
+                return retryAfter[0];
+            }
+
+            this.buckets.compute(key, (k, bucket) -> take.apply(bucket));
+            return retryAfter[0];
+        }
+
+        /**
+         * Gives back a token taken by {@link #tryTake(String)}.
+         * <p>
+         * Keys without a bucket are skipped. Either their bucket was pruned after refilling, so there is nothing
+         * to give back, or they took from the overflow bucket, which can't be told apart from the former and is
+         * therefore never refunded.
+         * </p>
+         */
+        void refund(String key) {
+            this.buckets.computeIfPresent(key, (k, bucket) -> {
+                long now = System.nanoTime();
+                return new Bucket(Math.min(this.capacity, this.refill(bucket, now) + 1), now);
+            });
+        }
+
+        /**
+         * Checks whether a key's bucket is full, i.e. no tokens were taken from it recently.
+         */
+        boolean isFull(String key) {
+            return this.available(key) >= this.capacity;
+        }
+
+        /**
+         * @return 0 if a token is available, otherwise the number of seconds until one is
+         */
+        long secondsUntilAvailable(String key) {
+            double tokens = this.available(key);
+            return tokens >= 1 ? 0 : this.secondsUntilAvailable(tokens);
+        }
+
+        int size() {
+            return this.buckets.size();
+        }
+
+        /**
+         * Checks whether a key has or can get its own bucket.
+         */
+        private boolean track(String key) {
+            if (this.buckets.size() < this.maxKeys || this.buckets.containsKey(key)) {
+                return true;
+            }
+
+            this.pruneRefilled();
+
+            return this.buckets.size() < this.maxKeys;
+        }
+
+        private double available(String key) {
+            long now = System.nanoTime();
+
+            var bucket = this.buckets.get(key);
+            if (bucket != null) {
+                return this.refill(bucket, now);
+            }
+
+            if (this.buckets.size() >= this.maxKeys) {
+                // Would have to share the overflow bucket
+                return this.refill(this.overflow.get(), now);
+            }
+
+            return this.capacity;
+        }
+
+        private double refill(Bucket bucket, long now) {
+            return Math.min(this.capacity, bucket.tokens() + (now - bucket.updatedAt()) * this.tokensPerNano);
+        }
+
+        private long secondsUntilAvailable(double tokens) {
+            return Math.max(1, (long) Math.ceil((1 - tokens) / this.tokensPerNano / TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        private void pruneRefilled() {
+            long now = System.nanoTime();
+            // A full bucket behaves exactly like a missing one
+            this.buckets.entrySet().removeIf(entry -> this.refill(entry.getValue(), now) >= this.capacity);
+        }
+    }
+}
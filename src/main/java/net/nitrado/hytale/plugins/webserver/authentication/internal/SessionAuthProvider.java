@@ -5,6 +5,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import net.nitrado.hytale.plugins.webserver.authentication.AuthProvider;
 import net.nitrado.hytale.plugins.webserver.authentication.HytaleUserPrincipal;
+import net.nitrado.hytale.plugins.webserver.authorization.PermissionDecisionCache;
 
 import java.io.IOException;
 import java.util.UUID;
@@ -19,14 +20,24 @@ import java.util.UUID;
 public final class SessionAuthProvider implements AuthProvider {
 
     private final HytaleLogger logger;
+    private final PermissionDecisionCache permissionCache;
 
     public SessionAuthProvider(HytaleLogger logger) {
+        this(logger, null);
+    }
+
+    public SessionAuthProvider(HytaleLogger logger, PermissionDecisionCache permissionCache) {
         this.logger = logger;
+        this.permissionCache = permissionCache;
     }
 
     @Override
     public AuthProvider.AuthResult authenticate(HttpServletRequest req, HttpServletResponse res) {
-        var session = req.getSession();
+        // Never create a session here, only login does that
+        var session = req.getSession(false);
+        if (session == null) {
+            return new AuthResult(AuthResultType.NONE, null);
+        }
 
         var uuidObj = session.getAttribute("uuid");
         if (uuidObj == null) {
@@ -43,7 +54,7 @@ public final class SessionAuthProvider implements AuthProvider {
             username = (String) usernameObj;
         }
 
-        return new AuthResult(AuthResultType.SUCCESS, new HytaleUserPrincipal(uuid, username));
+        return new AuthResult(AuthResultType.SUCCESS, new HytaleUserPrincipal(uuid, username, permissionCache));
     }
 
     @Override
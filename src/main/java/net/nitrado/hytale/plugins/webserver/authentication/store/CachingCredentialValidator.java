@@ -0,0 +1,193 @@
+package net.nitrado.hytale.plugins.webserver.authentication.store;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CachingCredentialValidator remembers successful credential verifications of another
+ * {@link CredentialValidator} for a limited time, so that clients repeatedly authenticating with the
+ * same credential (e.g. service accounts using Basic Auth) don't pay for a BCrypt verification on
+ * every request.
+ * <p>
+ * Cache keys are an HMAC over the user identifier and the credential, using a random key that only
+ * lives in memory, so plain text credentials are never retained. Failed verifications are not cached.
+ * Entries are dropped when they expire, when the cache exceeds its capacity (least recently used first),
+ * or when {@link #invalidate(UUID)} is called for the account they belong to.
+ * </p>
+ */
+public final class CachingCredentialValidator implements CredentialValidator, CredentialChangeListener {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private record CacheEntry(ValidationResult result, long validUntil) {}
+
+    private final CredentialValidator delegate;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final SecretKeySpec hmacKey;
+
+    private final Map<String, CacheEntry> entries;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingCredentialValidator(CredentialValidator delegate, Duration ttl, int maxEntries) {
+        this.delegate = delegate;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+
+        var key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.hmacKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > CachingCredentialValidator.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public boolean hasUser(String username) {
+        return this.delegate.hasUser(username);
+    }
+
+    @Override
+    public boolean hasUser(UUID uuid) {
+        return this.delegate.hasUser(uuid);
+    }
+
+    @Override
+    public ValidationResult validateCredential(String username, String credential) {
+        var key = this.computeKey("n:" + username.toLowerCase(), credential);
+        var cached = this.lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        var generation = this.generation.get();
+        var result = this.delegate.validateCredential(username, credential);
+        this.store(key, result, generation);
+
+        return result;
+    }
+
+    @Override
+    public ValidationResult validateCredential(UUID uuid, String credential) {
+        var key = this.computeKey("u:" + uuid, credential);
+        var cached = this.lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        var generation = this.generation.get();
+        var result = this.delegate.validateCredential(uuid, credential);
+        this.store(key, result, generation);
+
+        return result;
+    }
+
+    /**
+     * Removes all cached verifications belonging to the given account.
+     *
+     * @param uuid the account whose cached verifications to remove
+     */
+    public void invalidate(UUID uuid) {
+        this.generation.incrementAndGet();
+
+        synchronized (this.entries) {
+            this.entries.values().removeIf(entry -> entry.result().uuid().equals(uuid));
+        }
+    }
+
+    /**
+     * Removes all cached verifications.
+     */
+    public void invalidateAll() {
+        this.generation.incrementAndGet();
+
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    @Override
+    public void onCredentialChanged(UUID uuid) {
+        this.invalidate(uuid);
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    private ValidationResult lookup(String key) {
+        CacheEntry entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+            if (entry != null && entry.validUntil() < System.currentTimeMillis()) {
+                this.entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            this.misses.increment();
+            return null;
+        }
+
+        this.hits.increment();
+        return entry.result();
+    }
+
+    private void store(String key, ValidationResult result, long generation) {
+        if (result == null) {
+            return;
+        }
+
+        synchronized (this.entries) {
+            // A credential change happened while we were verifying, so the result may already be stale
+            if (this.generation.get() != generation) {
+                return;
+            }
+
+            this.entries.put(key, new CacheEntry(result, System.currentTimeMillis() + this.ttlMillis));
+        }
+    }
+
+    private String computeKey(String identifier, String credential) {
+        try {
+            var mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(this.hmacKey);
+            mac.update(identifier.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(credential.getBytes(StandardCharsets.UTF_8));
+
+            return HexFormat.of().formatHex(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is required to be available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
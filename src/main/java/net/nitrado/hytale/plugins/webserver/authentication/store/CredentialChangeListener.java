@@ -0,0 +1,11 @@
+package net.nitrado.hytale.plugins.webserver.authentication.store;
+
+import java.util.UUID;
+
+/**
+ * Notified by a {@link UserCredentialStore} whenever the credential or name of an account changes.
+ */
+@FunctionalInterface
+public interface CredentialChangeListener {
+    void onCredentialChanged(UUID uuid);
+}
@@ -0,0 +1,160 @@
+package net.nitrado.hytale.plugins.webserver.authentication.store;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * CredentialHasher performs BCrypt hashing and verification on a dedicated, size-limited thread pool.
+ * <p>
+ * BCrypt is deliberately expensive. Running it on the web server's request threads allows a burst of
+ * authentication attempts to occupy all of them. Instead, work is queued to a small number of hasher
+ * threads with a bounded queue; once the queue is full, further attempts are rejected immediately with a
+ * {@link CredentialHasherOverloadedException}.
+ * </p>
+ */
+public final class CredentialHasher {
+    public static final int COST = 10;
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder workNanos = new LongAdder();
+
+    /**
+     * Creates a CredentialHasher that runs all work on the calling thread, without admission control.
+     */
+    public CredentialHasher() {
+        this.executor = null;
+    }
+
+    /**
+     * Creates a CredentialHasher backed by a dedicated thread pool.
+     *
+     * @param threads   the number of threads performing BCrypt operations
+     * @param queueSize the number of operations that may wait for a free thread before further ones are rejected
+     */
+    public CredentialHasher(int threads, int queueSize) {
+        var threadCounter = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    var thread = new Thread(runnable, "WebServer-CredentialHasher-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Verifies a plain text credential against a BCrypt hash.
+     *
+     * @param credential the plain text credential
+     * @param hash       the BCrypt hash to verify against
+     * @return whether the credential matches the hash
+     * @throws CredentialHasherOverloadedException if no capacity is left to perform the verification
+     */
+    public boolean verify(String credential, String hash) {
+        return this.run(() -> BCrypt.verifyer().verify(credential.toCharArray(), hash).verified);
+    }
+
+    /**
+     * Hashes a plain text credential with BCrypt.
+     *
+     * @param credential the plain text credential
+     * @return the BCrypt hash
+     * @throws CredentialHasherOverloadedException if no capacity is left to perform the hashing
+     */
+    public String hash(String credential) {
+        return this.run(() -> BCrypt.withDefaults().hashToString(COST, credential.toCharArray()));
+    }
+
+    public int getQueueDepth() {
+        return this.executor == null ? 0 : this.executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return this.executor == null ? 0 : this.executor.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return this.completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * Returns the accumulated time operations spent waiting in the queue.
+     */
+    public long getWaitTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.waitNanos.sum());
+    }
+
+    /**
+     * Returns the accumulated time spent hashing and verifying.
+     */
+    public long getWorkTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.workNanos.sum());
+    }
+
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    private <T> T run(Supplier<T> task) {
+        var submittedAt = System.nanoTime();
+
+        if (this.executor == null) {
+            return this.measure(task, submittedAt);
+        }
+
+        Future<T> future;
+        try {
+            future = this.executor.submit(() -> this.measure(task, submittedAt));
+        } catch (RejectedExecutionException e) {
+            this.rejected.increment();
+            throw new CredentialHasherOverloadedException("Too many credential operations in progress");
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CredentialHasherOverloadedException("Interrupted while waiting for credential operation");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private <T> T measure(Supplier<T> task, long submittedAt) {
+        var startedAt = System.nanoTime();
+        this.waitNanos.add(startedAt - submittedAt);
+
+        try {
+            return task.get();
+        } finally {
+            this.workNanos.add(System.nanoTime() - startedAt);
+            this.completed.increment();
+        }
+    }
+}
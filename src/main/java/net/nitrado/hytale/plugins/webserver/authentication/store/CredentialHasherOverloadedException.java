@@ -0,0 +1,11 @@
+package net.nitrado.hytale.plugins.webserver.authentication.store;
+
+/**
+ * Thrown when a credential cannot be hashed or verified because the {@link CredentialHasher} has no
+ * capacity left. Callers should respond quickly with a retryable error instead of waiting.
+ */
+public class CredentialHasherOverloadedException extends RuntimeException {
+    public CredentialHasherOverloadedException(String message) {
+        super(message);
+    }
+}
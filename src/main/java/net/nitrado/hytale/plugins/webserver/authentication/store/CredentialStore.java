@@ -0,0 +1,37 @@
+package net.nitrado.hytale.plugins.webserver.authentication.store;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A store that both manages credentials and validates them.
+ */
+public interface CredentialStore extends UserCredentialStore, CredentialValidator {
+
+    /**
+     * A group of store operations, see {@link #runBatch(Batch)}.
+     */
+    @FunctionalInterface
+    interface Batch {
+        void run() throws IOException;
+    }
+
+    /**
+     * Returns the stored BCrypt hash of an account.
+     *
+     * @param uuid the account
+     * @return the hash, or null if the account doesn't exist
+     */
+    String getCredentialHash(UUID uuid);
+
+    /**
+     * Runs a group of operations, allowing the store to persist them together once all have completed
+     * instead of after each one.
+     *
+     * @param batch the operations to run
+     * @throws IOException if an operation fails or the changes could not be persisted
+     */
+    default void runBatch(Batch batch) throws IOException {
+        batch.run();
+    }
+}
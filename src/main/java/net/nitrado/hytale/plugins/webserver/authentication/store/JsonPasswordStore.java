@@ -1,34 +1,97 @@
 package net.nitrado.hytale.plugins.webserver.authentication.store;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
 import com.hypixel.hytale.logger.HytaleLogger;
 import org.bson.Document;
 import org.bson.json.JsonWriterSettings;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 
 /**
  * JsonPasswordStore implements a JSON file based password store, with passwords being saved as
  * BCrypt hashes.
+ * <p>
+ * The file is always replaced atomically by writing a temporary file and renaming it, so a crash while
+ * saving never leaves a partially written store behind. With a flush delay configured, changes are not
+ * written immediately; instead, all changes made within the delay are coalesced into a single write by a
+ * background thread. In that mode, write failures are logged and retried with the next change or
+ * {@link #flush()} rather than reported to the caller.
+ * </p>
  */
-public final class JsonPasswordStore implements CredentialValidator, UserCredentialStore {
+public final class JsonPasswordStore implements CredentialStore, Closeable {
+
+    // BCrypt format: $2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("^\\$2[aby]?\\$\\d{1,2}\\$[./A-Za-z0-9]{53}$");
 
     protected final Path path;
     protected final HytaleLogger logger;
-
+    protected final CredentialHasher hasher;
+    protected final Duration flushDelay;
+    protected final ScheduledExecutorService flusher;
+
+    // Incremented on every change, to detect changes made while a snapshot was being written
+    private final AtomicLong modifications = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Per thread, so that a batch only defers its own changes and not those made concurrently by other threads
+    private final ThreadLocal<Integer> batchDepth = ThreadLocal.withInitial(() -> 0);
+    private final Object saveLock = new Object();
+    private volatile long savedModifications = 0;
+
+    // Both name maps are only modified while holding writeLock, so they always mirror each other once it is released
     protected final Map<String, UUID> nameToUUID = new ConcurrentHashMap<>();
+    protected final Map<UUID, String> uuidToName = new ConcurrentHashMap<>();
     protected final Map<UUID, String> uuidToCredential = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    protected final List<CredentialChangeListener> changeListeners = new CopyOnWriteArrayList<>();
 
     public JsonPasswordStore(Path path, HytaleLogger logger) {
+        this(path, logger, new CredentialHasher());
+    }
+
+    public JsonPasswordStore(Path path, HytaleLogger logger, CredentialHasher hasher) {
+        this(path, logger, hasher, Duration.ZERO);
+    }
+
+    /**
+     * @param path       the path of the JSON file
+     * @param logger     the logger to use
+     * @param hasher     the hasher used for BCrypt operations
+     * @param flushDelay how long to collect changes before writing them, or {@link Duration#ZERO} to write
+     *                   every change before returning
+     */
+    public JsonPasswordStore(Path path, HytaleLogger logger, CredentialHasher hasher, Duration flushDelay) {
         this.path = path;
         this.logger = logger;
+        this.hasher = hasher;
+        this.flushDelay = flushDelay;
+
+        if (flushDelay.isPositive()) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "WebServer-CredentialStoreFlusher-" + path.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.flusher = null;
+        }
     }
 
     public void load() throws IOException {
@@ -38,6 +101,9 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
             Files.createDirectories(parent);
         }
 
+        // Left behind if we crashed while saving, the store itself is still intact
+        Files.deleteIfExists(this.getTempPath());
+
         if (!Files.exists(this.path)) {
             return;
         }
@@ -46,6 +112,7 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
         Document document = Document.parse(jsonString);
 
         this.nameToUUID.clear();
+        this.uuidToName.clear();
         this.uuidToCredential.clear();
 
         Document usernames = document.get("users", Document.class);
@@ -54,6 +121,7 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
                 String username = entry.getKey();
                 UUID uuid = UUID.fromString(entry.getValue().toString());
                 this.nameToUUID.put(username, uuid);
+                this.uuidToName.put(uuid, username);
             }
         }
 
@@ -64,7 +132,7 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
                 String hashedPassword = entry.getValue().toString();
 
                 if (!isBcryptHash(hashedPassword)) {
-                    BCrypt.withDefaults().hashToString(10 , hashedPassword.toCharArray());
+                    hashedPassword = this.hasher.hash(hashedPassword);
                     changes = true;
                 }
 
@@ -74,7 +142,8 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
 
         if (changes) {
             // We have replaced a plain text password with a bcrypt hash, so we flush those changes
-            this.save();
+            this.modifications.incrementAndGet();
+            this.flush();
         }
     }
 
@@ -110,7 +179,7 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
             return null;
         }
 
-        if (BCrypt.verifyer().verify(credential.toCharArray(), savedCredential).verified) {
+        if (this.hasher.verify(credential, savedCredential)) {
             return new ValidationResult(uuid, getNameByUUID(uuid));
         }
 
@@ -119,7 +188,7 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
 
     @Override
     public void setUserCredential(UUID uuid, String username, String password) throws IOException {
-        this.importUserCredential(uuid, username, BCrypt.withDefaults().hashToString(10 , password.toCharArray()));
+        this.importUserCredential(uuid, username, this.hasher.hash(password));
     }
 
     @Override
@@ -128,66 +197,92 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
             throw new InvalidCredentialException("Given password is not a bcrypt hash");
         }
 
-        var lastPassword = this.uuidToCredential.get(uuid);
-        UUID lastUuid = null;
-        if (username != null) {
-            lastUuid = this.nameToUUID.get(username.toLowerCase());
-            this.nameToUUID.put(username.toLowerCase(), uuid);
-        }
+        synchronized (this.writeLock) {
+            var lastCredential = this.uuidToCredential.get(uuid);
+            var lastName = this.uuidToName.get(uuid);
+            var name = username != null ? username.toLowerCase() : null;
+            UUID lastUuid = null;
+
+            if (name != null) {
+                lastUuid = this.nameToUUID.get(name);
+                this.unlinkName(uuid);
+                if (lastUuid != null) {
+                    this.unlinkName(lastUuid);
+                }
+                this.linkName(name, uuid);
+            }
 
-        this.uuidToCredential.put(uuid, passwordHash);
+            this.uuidToCredential.put(uuid, passwordHash);
 
-        try {
-            this.save();
-        } catch (IOException e) {
-            this.uuidToCredential.put(uuid, lastPassword);
-            this.nameToUUID.put(username.toLowerCase(), lastUuid);
+            this.notifyChanged(uuid);
+            if (lastUuid != null && !lastUuid.equals(uuid)) {
+                this.notifyChanged(lastUuid);
+            }
 
-            throw e;
+            try {
+                this.save();
+            } catch (IOException e) {
+                this.restoreCredential(uuid, lastCredential);
+
+                if (name != null) {
+                    this.unlinkName(uuid);
+                    if (lastName != null) {
+                        this.linkName(lastName, uuid);
+                    }
+                    if (lastUuid != null && !lastUuid.equals(uuid)) {
+                        this.linkName(name, lastUuid);
+                    }
+                }
+
+                throw e;
+            }
         }
     }
 
     @Override
     public void deleteUserCredential(String username) throws IOException {
-        var uuid = this.nameToUUID.get(username.toLowerCase());
+        var uuid = this.getUUIDByName(username);
+        if (uuid == null) {
+            return;
+        }
 
         this.deleteUserCredential(uuid);
     }
 
     @Override
     public void deleteUserCredential(UUID uuid) throws IOException {
-        var lastCredential = this.uuidToCredential.get(uuid);
-        String lastName = this.getNameByUUID(uuid);
+        synchronized (this.writeLock) {
+            var lastCredential = this.uuidToCredential.remove(uuid);
+            var lastName = this.unlinkName(uuid);
 
-        if (lastName != null) {
-            this.nameToUUID.remove(lastName);
-        }
-        this.uuidToCredential.remove(uuid);
+            this.notifyChanged(uuid);
 
-        try {
-            this.save();
-        } catch (IOException e) {
-            this.nameToUUID.put(lastName, uuid);
-            this.uuidToCredential.put(uuid, lastCredential);
+            try {
+                this.save();
+            } catch (IOException e) {
+                if (lastName != null) {
+                    this.linkName(lastName, uuid);
+                }
+                this.restoreCredential(uuid, lastCredential);
 
-            throw e;
+                throw e;
+            }
         }
     }
 
     @Override
     public UUID getUUIDByName(String name) {
-        return this.nameToUUID.get(name);
+        return this.nameToUUID.get(name.toLowerCase());
     }
 
     @Override
     public String getNameByUUID(UUID uuid) {
-        for  (Map.Entry<String, UUID> entry : this.nameToUUID.entrySet()) {
-            if (entry.getValue().equals(uuid)) {
-                return entry.getKey();
-            }
-        }
+        return this.uuidToName.get(uuid);
+    }
 
-        return null;
+    @Override
+    public String getCredentialHash(UUID uuid) {
+        return this.uuidToCredential.get(uuid);
     }
 
     @Override
@@ -195,7 +290,170 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
         return this.uuidToCredential.keySet();
     }
 
+    @Override
+    public void addChangeListener(CredentialChangeListener listener) {
+        this.changeListeners.add(listener);
+    }
+
+    protected void notifyChanged(UUID uuid) {
+        for (CredentialChangeListener listener : this.changeListeners) {
+            listener.onCredentialChanged(uuid);
+        }
+    }
+
+    private void linkName(String name, UUID uuid) {
+        this.nameToUUID.put(name, uuid);
+        this.uuidToName.put(uuid, name);
+    }
+
+    /**
+     * Removes the name of an account from both maps.
+     *
+     * @return the removed name, or null if the account had none
+     */
+    private String unlinkName(UUID uuid) {
+        var name = this.uuidToName.remove(uuid);
+        if (name != null) {
+            this.nameToUUID.remove(name, uuid);
+        }
+
+        return name;
+    }
+
+    private void restoreCredential(UUID uuid, String credential) {
+        if (credential == null) {
+            this.uuidToCredential.remove(uuid);
+        } else {
+            this.uuidToCredential.put(uuid, credential);
+        }
+    }
+
+    /**
+     * Records a change and writes it, either right away or through the background flusher.
+     */
     protected void save() throws IOException {
+        this.modifications.incrementAndGet();
+
+        if (this.batchDepth.get() > 0) {
+            // Written once this thread's batch completes
+            return;
+        }
+
+        if (this.flusher == null) {
+            this.flush();
+            return;
+        }
+
+        this.scheduleFlush();
+    }
+
+    /**
+     * Runs the batch without writing any of its changes until it has completed, then writes them at once.
+     * <p>
+     * Only changes made by the calling thread are deferred. Changes made by other threads meanwhile are
+     * written as usual, along with whatever the batch has changed so far.
+     * </p>
+     */
+    @Override
+    public void runBatch(Batch batch) throws IOException {
+        int depth = this.batchDepth.get();
+        this.batchDepth.set(depth + 1);
+        Throwable failure = null;
+        try {
+            batch.run();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (depth > 0) {
+                this.batchDepth.set(depth);
+            } else {
+                this.batchDepth.remove();
+
+                // Changes made before a failure are kept in memory, so they are written as well. The batch's
+                // own failure stays the one reported if writing them fails too.
+                try {
+                    this.flush();
+                } catch (IOException | RuntimeException e) {
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all pending changes to disk.
+     *
+     * @throws IOException if the store could not be written
+     */
+    public void flush() throws IOException {
+        long modifications;
+        Document snapshot;
+
+        // Changes are made while holding writeLock, so the snapshot never contains half of one
+        synchronized (this.writeLock) {
+            modifications = this.modifications.get();
+            if (modifications == this.savedModifications) {
+                return;
+            }
+
+            snapshot = this.snapshot();
+        }
+
+        // Only the I/O happens outside of writeLock. The lock order is always writeLock, then saveLock.
+        synchronized (this.saveLock) {
+            if (modifications <= this.savedModifications) {
+                // A newer snapshot was written while we waited
+                return;
+            }
+
+            this.write(snapshot);
+            this.savedModifications = modifications;
+        }
+    }
+
+    /**
+     * Writes pending changes and stops the background flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.flusher != null) {
+            this.flusher.shutdown();
+            try {
+                this.flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        this.flush();
+    }
+
+    private void scheduleFlush() {
+        if (!this.flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.flusher.schedule(() -> {
+            this.flushScheduled.set(false);
+
+            try {
+                this.flush();
+            } catch (IOException e) {
+                // Already logged, the changes stay pending until the next flush
+            }
+
+            // Changes made while we were writing
+            if (this.modifications.get() != this.savedModifications) {
+                this.scheduleFlush();
+            }
+        }, this.flushDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private Document snapshot() {
         var document = new Document();
 
         var usernames = new Document();
@@ -211,18 +469,32 @@ public final class JsonPasswordStore implements CredentialValidator, UserCredent
         document.append("users", usernames);
         document.append("credentials", credentials);
 
+        return document;
+    }
+
+    private void write(Document document) throws IOException {
         var jsonString = document.toJson(JsonWriterSettings.builder().indent(true).build());
+        var tempPath = this.getTempPath();
 
         try {
-            Files.writeString(this.path, jsonString);
+            Files.writeString(tempPath, jsonString);
+
+            try {
+                Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException e) {
             this.logger.atSevere().log("failed to save to %s: :%s", this.path.toString(), e.getMessage());
             throw e;
         }
     }
 
+    private Path getTempPath() {
+        return this.path.resolveSibling(this.path.getFileName() + ".tmp");
+    }
+
     private boolean isBcryptHash(String password) {
-        // BCrypt format: $2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy
-        return password != null && password.matches("^\\$2[aby]?\\$\\d{1,2}\\$[./A-Za-z0-9]{53}$");
+        return password != null && BCRYPT_PATTERN.matcher(password).matches();
     }
 }
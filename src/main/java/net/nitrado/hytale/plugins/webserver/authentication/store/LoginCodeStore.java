@@ -2,28 +2,70 @@ package net.nitrado.hytale.plugins.webserver.authentication.store;
 
 import java.security.SecureRandom;
 import java.time.Duration;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoginCodeStore holds the short-lived codes players create in-game to log in to the web interface.
+ * <p>
+ * Each player has at most one active code; creating a new one replaces the previous one. Codes are kept in
+ * time buckets by expiry, which a background task sweeps periodically, so neither creating nor redeeming a
+ * code needs to look at other players' codes.
+ * </p>
+ */
 public final class LoginCodeStore {
     private static final Duration VALIDITY = Duration.ofMinutes(5);
+    private static final long BUCKET_MILLIS = Duration.ofSeconds(10).toMillis();
     private static final SecureRandom RANDOM = new SecureRandom();
 
     public record Entry (long validUntil, UUID uuid, String displayName) {}
 
     private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, String> codeByUuid = new ConcurrentHashMap<>();
+    // Codes by the bucket their expiry falls into
+    private final ConcurrentNavigableMap<Long, Set<String>> expiryBuckets = new ConcurrentSkipListMap<>();
+
+    private final ScheduledExecutorService sweeper;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder redeemed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public LoginCodeStore() {
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "WebServer-LoginCodeSweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.sweeper.scheduleWithFixedDelay(this::sweep, BUCKET_MILLIS, BUCKET_MILLIS, TimeUnit.MILLISECONDS);
+    }
 
-    public synchronized String createCode(UUID uuid, String displayName) {
+    public String createCode(UUID uuid, String displayName) {
         Entry entry = new Entry(System.currentTimeMillis() + VALIDITY.toMillis(), uuid, displayName);
 
-        long now = System.currentTimeMillis();
-        entries.entrySet().removeIf(e ->
-            e.getValue().validUntil < now || e.getValue().uuid.equals(uuid)
-        );
+        String code;
+        do {
+            code = generateCode();
+        } while (entries.putIfAbsent(code, entry) != null);
+
+        expiryBuckets.computeIfAbsent(entry.validUntil() / BUCKET_MILLIS, bucket -> ConcurrentHashMap.newKeySet()).add(code);
+
+        // Only the latest code of each player stays valid
+        var previousCode = codeByUuid.put(uuid, code);
+        if (previousCode != null) {
+            entries.remove(previousCode);
+        }
 
-        var code = generateCode();
-        entries.put(code, entry);
+        issued.increment();
 
         return code;
     }
@@ -34,13 +76,97 @@ public final class LoginCodeStore {
             return null;
         }
 
+        codeByUuid.remove(entry.uuid(), code);
+
         if (entry.validUntil < System.currentTimeMillis()) {
+            expired.increment();
+            return null;
+        }
+
+        redeemed.increment();
+        return entry;
+    }
+
+    /**
+     * Looks up a code without redeeming it, so it stays valid if the login can't be completed.
+     *
+     * @param code the code
+     * @return the code's entry, or null if the code doesn't exist or has expired
+     * @see #redeem(String, Entry)
+     */
+    public Entry peekEntry(String code) {
+        if (code == null) {
+            return null;
+        }
+
+        var entry = entries.get(code);
+        if (entry == null || entry.validUntil < System.currentTimeMillis()) {
             return null;
         }
 
         return entry;
     }
 
+    /**
+     * Redeems a code looked up with {@link #peekEntry(String)}.
+     *
+     * @param code  the code
+     * @param entry the entry returned for the code
+     * @return true if the code was redeemed, false if it was redeemed or replaced in the meantime
+     */
+    public boolean redeem(String code, Entry entry) {
+        if (!entries.remove(code, entry)) {
+            return false;
+        }
+
+        codeByUuid.remove(entry.uuid(), code);
+        redeemed.increment();
+        return true;
+    }
+
+    public long getActiveCount() {
+        return entries.size();
+    }
+
+    public long getIssuedCount() {
+        return issued.sum();
+    }
+
+    public long getRedeemedCount() {
+        return redeemed.sum();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * Stops the background sweeping of expired codes.
+     */
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Removes the codes in all buckets that have fully expired.
+     */
+    void sweep() {
+        long now = System.currentTimeMillis();
+        var expiredBuckets = expiryBuckets.headMap(now / BUCKET_MILLIS);
+
+        for (var bucket : expiredBuckets.entrySet()) {
+            for (String code : bucket.getValue()) {
+                var entry = entries.get(code);
+                if (entry != null && entry.validUntil() < now && entries.remove(code, entry)) {
+                    codeByUuid.remove(entry.uuid(), code);
+                    expired.increment();
+                }
+            }
+
+            expiredBuckets.remove(bucket.getKey(), bucket.getValue());
+        }
+    }
+
     private String generateCode() {
         var characters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
 
@@ -0,0 +1,337 @@
+package net.nitrado.hytale.plugins.webserver.authentication.store;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.MVStoreException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * MVStoreCredentialStore implements a password store on top of an embedded, single-file
+ * <a href="https://www.h2database.com/html/mvstore.html">MVStore</a>, with passwords being saved as
+ * BCrypt hashes.
+ * <p>
+ * Unlike {@link JsonPasswordStore}, accounts are not held in memory: lookups by name and UUID are served
+ * from indexed maps on disk (with MVStore's page cache in front), so the store scales to large numbers of
+ * accounts. Every change is committed as a single transaction covering all of its maps.
+ * </p>
+ */
+public final class MVStoreCredentialStore implements CredentialStore, Closeable {
+
+    // BCrypt format: $2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("^\\$2[aby]?\\$\\d{1,2}\\$[./A-Za-z0-9]{53}$");
+
+    private final Path path;
+    private final HytaleLogger logger;
+    private final CredentialHasher hasher;
+    private final List<CredentialChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final MVStore store;
+    private final MVMap<String, String> nameToUUID;
+    private final MVMap<String, String> uuidToName;
+    private final MVMap<String, String> uuidToCredential;
+
+    // Serializes writers, so each commit contains exactly one change, or exactly one batch
+    private final Object writeLock = new Object();
+    // Only the thread holding writeLock can be inside a batch, the depth lets it nest batches
+    private final ThreadLocal<Integer> batchDepth = ThreadLocal.withInitial(() -> 0);
+
+    public MVStoreCredentialStore(Path path, HytaleLogger logger, CredentialHasher hasher) throws IOException {
+        this.path = path;
+        this.logger = logger;
+        this.hasher = hasher;
+
+        var parent = path.getParent();
+        if (!Files.exists(parent)) {
+            Files.createDirectories(parent);
+        }
+
+        try {
+            this.store = new MVStore.Builder()
+                    .fileName(path.toString())
+                    .autoCommitDisabled()
+                    .open();
+        } catch (MVStoreException e) {
+            throw new IOException("Failed to open credential store " + path, e);
+        }
+
+        this.nameToUUID = this.store.openMap("nameToUUID");
+        this.uuidToName = this.store.openMap("uuidToName");
+        this.uuidToCredential = this.store.openMap("uuidToCredential");
+
+        // A rollback drops maps that were never committed, so new maps are committed right away
+        this.commit();
+    }
+
+    /**
+     * Copies all accounts from a {@link JsonPasswordStore} in a single transaction, e.g. when switching an
+     * existing installation to this store.
+     *
+     * @param source the store to copy accounts from
+     * @throws IOException if the accounts could not be committed
+     */
+    public void importFrom(JsonPasswordStore source) throws IOException {
+        synchronized (this.writeLock) {
+            for (UUID uuid : source.listUsers()) {
+                var credential = source.getCredentialHash(uuid);
+                if (credential == null) {
+                    continue;
+                }
+
+                var name = source.getNameByUUID(uuid);
+                if (name != null) {
+                    this.nameToUUID.put(name, uuid.toString());
+                    this.uuidToName.put(uuid.toString(), name);
+                }
+
+                this.uuidToCredential.put(uuid.toString(), credential);
+            }
+
+            this.commit();
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.uuidToCredential.isEmpty();
+    }
+
+    @Override
+    public boolean hasUser(String username) {
+        var uuid = this.getUUIDByName(username);
+        if (uuid == null) {
+            return false;
+        }
+
+        return this.hasUser(uuid);
+    }
+
+    @Override
+    public boolean hasUser(UUID uuid) {
+        return this.uuidToCredential.containsKey(uuid.toString());
+    }
+
+    @Override
+    public ValidationResult validateCredential(String username, String credential) {
+        var uuid = this.getUUIDByName(username);
+        if (uuid == null) {
+            return null;
+        }
+
+        return this.validateCredential(uuid, credential);
+    }
+
+    @Override
+    public ValidationResult validateCredential(UUID uuid, String credential) {
+        var savedCredential = this.uuidToCredential.get(uuid.toString());
+        if (savedCredential == null) {
+            return null;
+        }
+
+        if (this.hasher.verify(credential, savedCredential)) {
+            return new ValidationResult(uuid, getNameByUUID(uuid));
+        }
+
+        return null;
+    }
+
+    @Override
+    public void setUserCredential(UUID uuid, String username, String password) throws IOException {
+        this.importUserCredential(uuid, username, this.hasher.hash(password));
+    }
+
+    @Override
+    public void importUserCredential(UUID uuid, String username, String passwordHash) throws IOException, InvalidCredentialException {
+        if (passwordHash == null || !BCRYPT_PATTERN.matcher(passwordHash).matches()) {
+            throw new InvalidCredentialException("Given password is not a bcrypt hash");
+        }
+
+        var key = uuid.toString();
+        UUID lastUuid = null;
+
+        synchronized (this.writeLock) {
+            if (username != null) {
+                var name = username.toLowerCase();
+
+                var lastUuidString = this.nameToUUID.get(name);
+                if (lastUuidString != null) {
+                    lastUuid = UUID.fromString(lastUuidString);
+                    this.uuidToName.remove(lastUuidString);
+                }
+
+                var lastName = this.uuidToName.remove(key);
+                if (lastName != null) {
+                    this.nameToUUID.remove(lastName);
+                }
+
+                this.nameToUUID.put(name, key);
+                this.uuidToName.put(key, name);
+            }
+
+            this.uuidToCredential.put(key, passwordHash);
+
+            this.commit();
+        }
+
+        this.notifyChanged(uuid);
+        if (lastUuid != null && !lastUuid.equals(uuid)) {
+            this.notifyChanged(lastUuid);
+        }
+    }
+
+    @Override
+    public void deleteUserCredential(String username) throws IOException {
+        var uuid = this.getUUIDByName(username);
+        if (uuid == null) {
+            return;
+        }
+
+        this.deleteUserCredential(uuid);
+    }
+
+    @Override
+    public void deleteUserCredential(UUID uuid) throws IOException {
+        var key = uuid.toString();
+
+        synchronized (this.writeLock) {
+            var lastName = this.uuidToName.remove(key);
+            if (lastName != null) {
+                this.nameToUUID.remove(lastName);
+            }
+
+            this.uuidToCredential.remove(key);
+
+            this.commit();
+        }
+
+        this.notifyChanged(uuid);
+    }
+
+    @Override
+    public String getCredentialHash(UUID uuid) {
+        return this.uuidToCredential.get(uuid.toString());
+    }
+
+    @Override
+    public UUID getUUIDByName(String name) {
+        var uuid = this.nameToUUID.get(name.toLowerCase());
+        return uuid != null ? UUID.fromString(uuid) : null;
+    }
+
+    @Override
+    public String getNameByUUID(UUID uuid) {
+        return this.uuidToName.get(uuid.toString());
+    }
+
+    /**
+     * Returns all accounts. Prefer {@link #listUsers(int, int)} for large stores, as this loads every
+     * account's UUID into memory.
+     */
+    @Override
+    public Set<UUID> listUsers() {
+        var result = new HashSet<UUID>();
+        for (String key : this.uuidToCredential.keySet()) {
+            result.add(UUID.fromString(key));
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<UUID> listUsers(int offset, int limit) {
+        var result = new ArrayList<UUID>();
+        if (offset >= this.uuidToCredential.sizeAsLong()) {
+            return result;
+        }
+
+        var iterator = this.uuidToCredential.keyIterator(this.uuidToCredential.getKey(offset));
+        while (iterator.hasNext() && result.size() < limit) {
+            result.add(UUID.fromString(iterator.next()));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void addChangeListener(CredentialChangeListener listener) {
+        this.changeListeners.add(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.store.close();
+        } catch (MVStoreException e) {
+            throw new IOException("Failed to close credential store " + this.path, e);
+        }
+    }
+
+    private void notifyChanged(UUID uuid) {
+        for (CredentialChangeListener listener : this.changeListeners) {
+            listener.onCredentialChanged(uuid);
+        }
+    }
+
+    /**
+     * Runs the batch without committing its changes individually, then commits them in a single transaction.
+     * If the batch fails, none of its changes are committed.
+     * <p>
+     * The maps aren't isolated from each other's writers, so other threads' changes wait until the batch has
+     * completed. Otherwise, they would be committed as part of the batch, or discarded by its rollback.
+     * </p>
+     */
+    @Override
+    public void runBatch(Batch batch) throws IOException {
+        synchronized (this.writeLock) {
+            int depth = this.batchDepth.get();
+            this.batchDepth.set(depth + 1);
+
+            try {
+                batch.run();
+            } catch (Throwable e) {
+                if (depth == 0) {
+                    this.store.rollback();
+                }
+
+                throw e;
+            } finally {
+                if (depth > 0) {
+                    this.batchDepth.set(depth);
+                } else {
+                    this.batchDepth.remove();
+                }
+            }
+
+            if (depth == 0) {
+                this.commit();
+            }
+        }
+    }
+
+    private void commit() throws IOException {
+        if (this.batchDepth.get() > 0) {
+            // Committed once the batch completes
+            return;
+        }
+
+        try {
+            this.store.commit();
+        } catch (MVStoreException e) {
+            // Discard the uncommitted change, so memory and disk don't diverge
+            this.store.rollback();
+
+            this.logger.atSevere().log("failed to save to %s: :%s", this.path.toString(), e.getMessage());
+            throw new IOException("Failed to commit to credential store " + this.path, e);
+        }
+    }
+}
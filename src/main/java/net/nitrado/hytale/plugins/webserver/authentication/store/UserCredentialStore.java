@@ -1,6 +1,7 @@
 package net.nitrado.hytale.plugins.webserver.authentication.store;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -17,4 +18,27 @@ public interface UserCredentialStore {
     String getNameByUUID(UUID uuid);
 
     Set<UUID> listUsers();
+
+    /**
+     * Returns a page of accounts, in a stable order as long as no accounts are added or removed.
+     *
+     * @param offset the number of accounts to skip
+     * @param limit  the maximum number of accounts to return
+     * @return the accounts on the requested page
+     */
+    default List<UUID> listUsers(int offset, int limit) {
+        return listUsers().stream().sorted().skip(offset).limit(limit).toList();
+    }
+
+    /**
+     * Registers a listener that is notified whenever the credential or name of an account changes.
+     * <p>
+     * The default implementation ignores the listener, for stores that don't report changes. Listeners such
+     * as caches then only pick up changes once their entries expire.
+     * </p>
+     *
+     * @param listener the listener to notify
+     */
+    default void addChangeListener(CredentialChangeListener listener) {
+    }
 }
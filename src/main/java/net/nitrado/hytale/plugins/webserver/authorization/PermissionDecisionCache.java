@@ -0,0 +1,130 @@
+package net.nitrado.hytale.plugins.webserver.authorization;
+
+import com.hypixel.hytale.server.core.permissions.PermissionsModule;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PermissionDecisionCache remembers the results of {@link PermissionsModule} permission checks across requests
+ * for a short time, so that clients issuing many requests don't resolve the same permissions through all
+ * groups and providers every time.
+ * <p>
+ * The cache only learns about permission changes made through {@link #invalidate(UUID)} or
+ * {@link #invalidateAll()}. Changes made elsewhere, e.g. through in-game commands, take effect once the
+ * cached decisions expire, so the TTL should be kept short.
+ * </p>
+ */
+public final class PermissionDecisionCache {
+
+    private record DecisionKey(UUID uuid, String permission, Boolean defaultValue) {}
+
+    private record CacheEntry(boolean allowed, long validUntil) {}
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<DecisionKey, CacheEntry> entries;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PermissionDecisionCache(Duration ttl, int maxEntries) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DecisionKey, CacheEntry> eldest) {
+                return size() > PermissionDecisionCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Checks whether a user has a permission, see {@link PermissionsModule#hasPermission(UUID, String)}.
+     */
+    public boolean hasPermission(UUID uuid, String permission) {
+        return this.resolve(new DecisionKey(uuid, permission, null));
+    }
+
+    /**
+     * Checks whether a user has a permission, see {@link PermissionsModule#hasPermission(UUID, String, boolean)}.
+     */
+    public boolean hasPermission(UUID uuid, String permission, boolean defaultValue) {
+        return this.resolve(new DecisionKey(uuid, permission, defaultValue));
+    }
+
+    /**
+     * Removes all cached decisions for the given user.
+     *
+     * @param uuid the user whose permissions or groups changed
+     */
+    public void invalidate(UUID uuid) {
+        this.generation.incrementAndGet();
+
+        synchronized (this.entries) {
+            this.entries.keySet().removeIf(key -> key.uuid().equals(uuid));
+        }
+    }
+
+    /**
+     * Removes all cached decisions, e.g. after the permissions of a group changed.
+     */
+    public void invalidateAll() {
+        this.generation.incrementAndGet();
+
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    private boolean resolve(DecisionKey key) {
+        synchronized (this.entries) {
+            var entry = this.entries.get(key);
+            if (entry != null) {
+                if (entry.validUntil() >= System.currentTimeMillis()) {
+                    this.hits.increment();
+                    return entry.allowed();
+                }
+
+                this.entries.remove(key);
+            }
+        }
+
+        this.misses.increment();
+
+        var generation = this.generation.get();
+        var allowed = key.defaultValue() == null
+                ? PermissionsModule.get().hasPermission(key.uuid(), key.permission())
+                : PermissionsModule.get().hasPermission(key.uuid(), key.permission(), key.defaultValue());
+
+        synchronized (this.entries) {
+            // Permissions changed while we were resolving, so the decision may already be stale
+            if (this.generation.get() == generation) {
+                this.entries.put(key, new CacheEntry(allowed, System.currentTimeMillis() + this.ttlMillis));
+            }
+        }
+
+        return allowed;
+    }
+}
@@ -0,0 +1,114 @@
+package net.nitrado.hytale.plugins.webserver.authorization;
+
+import com.hypixel.hytale.server.core.permissions.PermissionHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A set of permission requirements, compiled once from {@link RequirePermissions} annotations or filter
+ * arguments and evaluated on every request.
+ * <p>
+ * All {@link RequirePermissions.Mode#ALL} nodes are merged into a single deduplicated set that is checked
+ * first, failing on the first missing permission. Each {@link RequirePermissions.Mode#ANY} group is checked
+ * afterwards and is satisfied right away if it shares a node with the ALL set, which is known to be granted
+ * at that point. An empty ANY group is always satisfied.
+ * </p>
+ */
+public final class PermissionRequirement {
+
+    private final String[] allOf;
+    private final String[][] anyOf;
+
+    private PermissionRequirement(Set<String> allOf, List<String[]> anyOf) {
+        this.allOf = allOf.toArray(new String[0]);
+
+        var groups = new ArrayList<String[]>();
+        for (String[] group : anyOf) {
+            if (group.length == 0 || Arrays.stream(group).anyMatch(allOf::contains)) {
+                // Always satisfied once the ALL set is
+                continue;
+            }
+
+            groups.add(group);
+        }
+
+        this.anyOf = groups.toArray(new String[0][]);
+    }
+
+    /**
+     * Compiles the given annotations, all of which must be satisfied.
+     */
+    public static PermissionRequirement of(RequirePermissions... annotations) {
+        var allOf = new LinkedHashSet<String>();
+        var anyOf = new ArrayList<String[]>();
+
+        for (RequirePermissions annotation : annotations) {
+            if (annotation.mode() == RequirePermissions.Mode.ANY) {
+                anyOf.add(intern(annotation.value()).toArray(new String[0]));
+            } else {
+                allOf.addAll(intern(annotation.value()));
+            }
+        }
+
+        return new PermissionRequirement(allOf, anyOf);
+    }
+
+    /**
+     * Requires all of the given permissions.
+     */
+    public static PermissionRequirement all(String... permissions) {
+        return new PermissionRequirement(intern(permissions), List.of());
+    }
+
+    /**
+     * Requires at least one of the given permissions, or none if no permissions are given.
+     */
+    public static PermissionRequirement any(String... permissions) {
+        return new PermissionRequirement(Set.of(), List.<String[]>of(intern(permissions).toArray(new String[0])));
+    }
+
+    /**
+     * Checks whether the holder satisfies all requirements.
+     *
+     * @param holder the permission holder to check
+     * @return whether the holder is allowed access
+     */
+    public boolean isSatisfiedBy(PermissionHolder holder) {
+        for (String permission : this.allOf) {
+            if (!holder.hasPermission(permission)) {
+                return false;
+            }
+        }
+
+        for (String[] group : this.anyOf) {
+            if (!hasAnyPermission(holder, group)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean hasAnyPermission(PermissionHolder holder, String[] permissions) {
+        for (String permission : permissions) {
+            if (holder.hasPermission(permission)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Set<String> intern(String[] permissions) {
+        var result = new LinkedHashSet<String>();
+        for (String permission : permissions) {
+            result.add(permission.intern());
+        }
+
+        return result;
+    }
+}
@@ -10,16 +10,14 @@ import java.io.IOException;
 
 public final class RequirePermissionsFilter implements Filter {
 
-    protected String[] permissions;
-    protected boolean any = false;
+    protected final PermissionRequirement requirement;
 
     public RequirePermissionsFilter(String ...permissions) {
         this(false, permissions);
     }
 
     public RequirePermissionsFilter(boolean any, String ...permissions) {
-        this.permissions = permissions;
-        this.any = any;
+        this.requirement = any ? PermissionRequirement.any(permissions) : PermissionRequirement.all(permissions);
     }
 
     @Override
@@ -39,8 +37,7 @@ public final class RequirePermissionsFilter implements Filter {
             return;
         }
 
-        var isAllowed = this.any ? this.hasAnyPermission(holder) : this.hasAllPermissions(holder);
-        if (!isAllowed) {
+        if (!this.requirement.isSatisfiedBy(holder)) {
             if (isAnonymousUser(holder)) {
                 res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             } else {
@@ -60,28 +57,4 @@ public final class RequirePermissionsFilter implements Filter {
 
         return principal.isAnonymous();
     }
-
-    protected boolean hasAllPermissions(PermissionHolder holder) {
-        for (String permission : this.permissions) {
-            if (!holder.hasPermission(permission)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    protected boolean hasAnyPermission(PermissionHolder holder) {
-        if (this.permissions.length == 0) {
-            return true;
-        }
-
-        for (String permission : this.permissions) {
-            if (holder.hasPermission(permission)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
 }
@@ -0,0 +1,35 @@
+package net.nitrado.hytale.plugins.webserver.commands;
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.AbstractCommand;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.CommandUtil;
+import net.nitrado.hytale.plugins.webserver.Permissions;
+import net.nitrado.hytale.plugins.webserver.metrics.MetricsRegistry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+
+public class StatsCommand extends AbstractCommand {
+
+    private final MetricsRegistry metrics;
+
+    public StatsCommand(MetricsRegistry metrics) {
+        super("stats", "Show web server statistics.");
+
+        this.metrics = metrics;
+    }
+
+    @Nullable
+    @Override
+    protected CompletableFuture<Void> execute(@Nonnull CommandContext context) {
+        CommandUtil.requirePermission(context.sender(), Permissions.COMMAND_STATS);
+
+        for (var entry : this.metrics.snapshot().entrySet()) {
+            context.sendMessage(Message.raw(entry.getKey() + ": " + entry.getValue()));
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+}
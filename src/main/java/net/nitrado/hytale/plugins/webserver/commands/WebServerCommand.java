@@ -3,13 +3,15 @@ package net.nitrado.hytale.plugins.webserver.commands;
 import com.hypixel.hytale.server.core.command.system.basecommands.AbstractCommandCollection;
 import net.nitrado.hytale.plugins.webserver.WebServerPlugin;
 import net.nitrado.hytale.plugins.webserver.authentication.store.LoginCodeStore;
+import net.nitrado.hytale.plugins.webserver.metrics.MetricsRegistry;
 
 public final class WebServerCommand extends AbstractCommandCollection {
 
-    public WebServerCommand(LoginCodeStore loginCodeStore) {
+    public WebServerCommand(LoginCodeStore loginCodeStore, MetricsRegistry metrics) {
         super("webserver", "Manage webserver-related configuration, such as user credentials and service accounts");
         addAliases("web");
 
         addSubCommand(new CodeCommand(loginCodeStore));
+        addSubCommand(new StatsCommand(metrics));
     }
 }
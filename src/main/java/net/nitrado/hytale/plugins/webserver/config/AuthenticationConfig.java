@@ -0,0 +1,360 @@
+package net.nitrado.hytale.plugins.webserver.config;
+
+import com.hypixel.hytale.codec.Codec;
+import com.hypixel.hytale.codec.KeyedCodec;
+import com.hypixel.hytale.codec.builder.BuilderCodec;
+
+/**
+ * Configuration for authentication related settings.
+ */
+public final class AuthenticationConfig {
+
+    /**
+     * Configuration for the cache of successful credential verifications used by Basic Auth.
+     */
+    public static class CredentialCacheConfig {
+        public static final BuilderCodec<CredentialCacheConfig> CODEC = BuilderCodec.builder(CredentialCacheConfig.class, CredentialCacheConfig::new)
+                .append(
+                        new KeyedCodec<>("Enabled", Codec.BOOLEAN),
+                        (config, value) -> config.enabled = value,
+                        config -> config.enabled
+                ).add()
+                .append(
+                        new KeyedCodec<>("TtlSeconds", Codec.INTEGER),
+                        (config, value) -> config.ttlSeconds = value,
+                        config -> config.ttlSeconds
+                ).add()
+                .append(
+                        new KeyedCodec<>("MaxEntries", Codec.INTEGER),
+                        (config, value) -> config.maxEntries = value,
+                        config -> config.maxEntries
+                ).add()
+                .build();
+
+        private boolean enabled = true;
+        private int ttlSeconds = 300;
+        private int maxEntries = 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+    }
+
+    /**
+     * Configuration for the thread pool performing BCrypt hashing and verification.
+     */
+    public static class CredentialHasherConfig {
+        public static final BuilderCodec<CredentialHasherConfig> CODEC = BuilderCodec.builder(CredentialHasherConfig.class, CredentialHasherConfig::new)
+                .append(
+                        new KeyedCodec<>("Threads", Codec.INTEGER),
+                        (config, value) -> config.threads = value,
+                        config -> config.threads
+                ).add()
+                .append(
+                        new KeyedCodec<>("QueueSize", Codec.INTEGER),
+                        (config, value) -> config.queueSize = value,
+                        config -> config.queueSize
+                ).add()
+                .build();
+
+        private int threads = 2;
+        private int queueSize = 32;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+    }
+
+    /**
+     * Configuration for where and how credentials are stored.
+     * <p>
+     * {@code Json} keeps all accounts in memory and saves them to a JSON file. {@code MVStore} keeps them
+     * in an embedded, indexed single-file database and is meant for large numbers of accounts.
+     * </p>
+     */
+    public static class CredentialStoreConfig {
+        public static final String TYPE_JSON = "Json";
+        public static final String TYPE_MVSTORE = "MVStore";
+
+        public static final BuilderCodec<CredentialStoreConfig> CODEC = BuilderCodec.builder(CredentialStoreConfig.class, CredentialStoreConfig::new)
+                .append(
+                        new KeyedCodec<>("Type", Codec.STRING),
+                        (config, value) -> config.type = value,
+                        config -> config.type
+                ).add()
+                .append(
+                        new KeyedCodec<>("FlushDelayMs", Codec.INTEGER),
+                        (config, value) -> config.flushDelayMs = value,
+                        config -> config.flushDelayMs
+                ).add()
+                .build();
+
+        private String type = TYPE_JSON;
+        // 0 writes every change before returning, only applies to the Json type
+        private int flushDelayMs = 1000;
+
+        public String getType() {
+            return type;
+        }
+
+        public int getFlushDelayMs() {
+            return flushDelayMs;
+        }
+    }
+
+    /**
+     * Configuration for the cache of permission decisions shared across requests.
+     * <p>
+     * Disabled by default, as permission changes made outside the web server, e.g. through in-game
+     * commands, only take effect once cached decisions expire.
+     * </p>
+     */
+    public static class PermissionCacheConfig {
+        public static final BuilderCodec<PermissionCacheConfig> CODEC = BuilderCodec.builder(PermissionCacheConfig.class, PermissionCacheConfig::new)
+                .append(
+                        new KeyedCodec<>("Enabled", Codec.BOOLEAN),
+                        (config, value) -> config.enabled = value,
+                        config -> config.enabled
+                ).add()
+                .append(
+                        new KeyedCodec<>("TtlSeconds", Codec.INTEGER),
+                        (config, value) -> config.ttlSeconds = value,
+                        config -> config.ttlSeconds
+                ).add()
+                .append(
+                        new KeyedCodec<>("MaxEntries", Codec.INTEGER),
+                        (config, value) -> config.maxEntries = value,
+                        config -> config.maxEntries
+                ).add()
+                .build();
+
+        private boolean enabled = false;
+        private int ttlSeconds = 5;
+        private int maxEntries = 4096;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+    }
+
+    /**
+     * Configuration for provisioning service accounts from the {@code provisioning/} directory.
+     */
+    public static class ProvisioningConfig {
+        public static final BuilderCodec<ProvisioningConfig> CODEC = BuilderCodec.builder(ProvisioningConfig.class, ProvisioningConfig::new)
+                .append(
+                        new KeyedCodec<>("WatchForChanges", Codec.BOOLEAN),
+                        (config, value) -> config.watchForChanges = value,
+                        config -> config.watchForChanges
+                ).add()
+                .append(
+                        new KeyedCodec<>("DebounceMs", Codec.INTEGER),
+                        (config, value) -> config.debounceMs = value,
+                        config -> config.debounceMs
+                ).add()
+                .build();
+
+        private boolean watchForChanges = true;
+        private int debounceMs = 1000;
+
+        public boolean isWatchForChanges() {
+            return watchForChanges;
+        }
+
+        public int getDebounceMs() {
+            return debounceMs;
+        }
+    }
+
+    /**
+     * Configuration for limiting failed login attempts per client IP and per account.
+     */
+    public static class RateLimitConfig {
+        public static final BuilderCodec<RateLimitConfig> CODEC = BuilderCodec.builder(RateLimitConfig.class, RateLimitConfig::new)
+                .append(
+                        new KeyedCodec<>("Enabled", Codec.BOOLEAN),
+                        (config, value) -> config.enabled = value,
+                        config -> config.enabled
+                ).add()
+                .append(
+                        new KeyedCodec<>("IpBurst", Codec.INTEGER),
+                        (config, value) -> config.ipBurst = value,
+                        config -> config.ipBurst
+                ).add()
+                .append(
+                        new KeyedCodec<>("IpPerMinute", Codec.INTEGER),
+                        (config, value) -> config.ipPerMinute = value,
+                        config -> config.ipPerMinute
+                ).add()
+                .append(
+                        new KeyedCodec<>("AccountBurst", Codec.INTEGER),
+                        (config, value) -> config.accountBurst = value,
+                        config -> config.accountBurst
+                ).add()
+                .append(
+                        new KeyedCodec<>("AccountPerMinute", Codec.INTEGER),
+                        (config, value) -> config.accountPerMinute = value,
+                        config -> config.accountPerMinute
+                ).add()
+                .append(
+                        new KeyedCodec<>("MaxTrackedKeys", Codec.INTEGER),
+                        (config, value) -> config.maxTrackedKeys = value,
+                        config -> config.maxTrackedKeys
+                ).add()
+                .build();
+
+        private boolean enabled = true;
+        private int ipBurst = 20;
+        private int ipPerMinute = 10;
+        private int accountBurst = 10;
+        private int accountPerMinute = 5;
+        private int maxTrackedKeys = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getIpBurst() {
+            return ipBurst;
+        }
+
+        public int getIpPerMinute() {
+            return ipPerMinute;
+        }
+
+        public int getAccountBurst() {
+            return accountBurst;
+        }
+
+        public int getAccountPerMinute() {
+            return accountPerMinute;
+        }
+
+        public int getMaxTrackedKeys() {
+            return maxTrackedKeys;
+        }
+    }
+
+    /**
+     * Configuration for the short-lived bearer tokens service accounts can obtain from the {@code /token} endpoint.
+     */
+    public static class BearerTokensConfig {
+        public static final BuilderCodec<BearerTokensConfig> CODEC = BuilderCodec.builder(BearerTokensConfig.class, BearerTokensConfig::new)
+                .append(
+                        new KeyedCodec<>("Enabled", Codec.BOOLEAN),
+                        (config, value) -> config.enabled = value,
+                        config -> config.enabled
+                ).add()
+                .append(
+                        new KeyedCodec<>("TtlSeconds", Codec.INTEGER),
+                        (config, value) -> config.ttlSeconds = value,
+                        config -> config.ttlSeconds
+                ).add()
+                .build();
+
+        private boolean enabled = true;
+        private int ttlSeconds = 900;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getTtlSeconds() {
+            return ttlSeconds;
+        }
+    }
+
+    public static final BuilderCodec<AuthenticationConfig> CODEC = BuilderCodec.builder(AuthenticationConfig.class, AuthenticationConfig::new)
+            .append(
+                    new KeyedCodec<>("CredentialCache", CredentialCacheConfig.CODEC),
+                    (config, value) -> config.credentialCache = value,
+                    config -> config.credentialCache
+            ).add()
+            .append(
+                    new KeyedCodec<>("CredentialHasher", CredentialHasherConfig.CODEC),
+                    (config, value) -> config.credentialHasher = value,
+                    config -> config.credentialHasher
+            ).add()
+            .append(
+                    new KeyedCodec<>("PermissionCache", PermissionCacheConfig.CODEC),
+                    (config, value) -> config.permissionCache = value,
+                    config -> config.permissionCache
+            ).add()
+            .append(
+                    new KeyedCodec<>("CredentialStore", CredentialStoreConfig.CODEC),
+                    (config, value) -> config.credentialStore = value,
+                    config -> config.credentialStore
+            ).add()
+            .append(
+                    new KeyedCodec<>("Provisioning", ProvisioningConfig.CODEC),
+                    (config, value) -> config.provisioning = value,
+                    config -> config.provisioning
+            ).add()
+            .append(
+                    new KeyedCodec<>("RateLimit", RateLimitConfig.CODEC),
+                    (config, value) -> config.rateLimit = value,
+                    config -> config.rateLimit
+            ).add()
+            .append(
+                    new KeyedCodec<>("BearerTokens", BearerTokensConfig.CODEC),
+                    (config, value) -> config.bearerTokens = value,
+                    config -> config.bearerTokens
+            ).add()
+            .build();
+
+    private CredentialCacheConfig credentialCache = new CredentialCacheConfig();
+    private CredentialHasherConfig credentialHasher = new CredentialHasherConfig();
+    private PermissionCacheConfig permissionCache = new PermissionCacheConfig();
+    private CredentialStoreConfig credentialStore = new CredentialStoreConfig();
+    private ProvisioningConfig provisioning = new ProvisioningConfig();
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+    private BearerTokensConfig bearerTokens = new BearerTokensConfig();
+
+    public CredentialCacheConfig getCredentialCache() {
+        return credentialCache;
+    }
+
+    public CredentialHasherConfig getCredentialHasher() {
+        return credentialHasher;
+    }
+
+    public PermissionCacheConfig getPermissionCache() {
+        return permissionCache;
+    }
+
+    public CredentialStoreConfig getCredentialStore() {
+        return credentialStore;
+    }
+
+    public ProvisioningConfig getProvisioning() {
+        return provisioning;
+    }
+
+    public RateLimitConfig getRateLimit() {
+        return rateLimit;
+    }
+
+    public BearerTokensConfig getBearerTokens() {
+        return bearerTokens;
+    }
+}
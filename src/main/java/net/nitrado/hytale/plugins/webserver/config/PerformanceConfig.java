@@ -0,0 +1,260 @@
+package net.nitrado.hytale.plugins.webserver.config;
+
+import com.hypixel.hytale.codec.Codec;
+import com.hypixel.hytale.codec.KeyedCodec;
+import com.hypixel.hytale.codec.builder.BuilderCodec;
+
+/**
+ * Configuration for tuning the web server's threads, connectors and protocols.
+ * <p>
+ * Thread pool and connector defaults match Jetty's own defaults.
+ * </p>
+ */
+public final class PerformanceConfig {
+
+    /**
+     * Configuration for the thread pool handling requests.
+     */
+    public static class ThreadPoolConfig {
+        public static final BuilderCodec<ThreadPoolConfig> CODEC = BuilderCodec.builder(ThreadPoolConfig.class, ThreadPoolConfig::new)
+                .append(
+                        new KeyedCodec<>("MinThreads", Codec.INTEGER),
+                        (config, value) -> config.minThreads = value,
+                        config -> config.minThreads
+                ).add()
+                .append(
+                        new KeyedCodec<>("MaxThreads", Codec.INTEGER),
+                        (config, value) -> config.maxThreads = value,
+                        config -> config.maxThreads
+                ).add()
+                .append(
+                        new KeyedCodec<>("IdleTimeoutMs", Codec.INTEGER),
+                        (config, value) -> config.idleTimeoutMs = value,
+                        config -> config.idleTimeoutMs
+                ).add()
+                .append(
+                        new KeyedCodec<>("VirtualThreads", Codec.BOOLEAN),
+                        (config, value) -> config.virtualThreads = value,
+                        config -> config.virtualThreads
+                ).add()
+                .build();
+
+        private int minThreads = 8;
+        private int maxThreads = 200;
+        private int idleTimeoutMs = 60000;
+        private boolean virtualThreads = false;
+
+        public int getMinThreads() {
+            return minThreads;
+        }
+
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        public int getIdleTimeoutMs() {
+            return idleTimeoutMs;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+    }
+
+    /**
+     * Configuration for the listening connector.
+     */
+    public static class ConnectorConfig {
+        public static final BuilderCodec<ConnectorConfig> CODEC = BuilderCodec.builder(ConnectorConfig.class, ConnectorConfig::new)
+                .append(
+                        new KeyedCodec<>("Acceptors", Codec.INTEGER),
+                        (config, value) -> config.acceptors = value,
+                        config -> config.acceptors
+                ).add()
+                .append(
+                        new KeyedCodec<>("Selectors", Codec.INTEGER),
+                        (config, value) -> config.selectors = value,
+                        config -> config.selectors
+                ).add()
+                .append(
+                        new KeyedCodec<>("IdleTimeoutMs", Codec.INTEGER),
+                        (config, value) -> config.idleTimeoutMs = value,
+                        config -> config.idleTimeoutMs
+                ).add()
+                .append(
+                        new KeyedCodec<>("AcceptQueueSize", Codec.INTEGER),
+                        (config, value) -> config.acceptQueueSize = value,
+                        config -> config.acceptQueueSize
+                ).add()
+                .append(
+                        new KeyedCodec<>("RequestHeaderSize", Codec.INTEGER),
+                        (config, value) -> config.requestHeaderSize = value,
+                        config -> config.requestHeaderSize
+                ).add()
+                .append(
+                        new KeyedCodec<>("ResponseHeaderSize", Codec.INTEGER),
+                        (config, value) -> config.responseHeaderSize = value,
+                        config -> config.responseHeaderSize
+                ).add()
+                .append(
+                        new KeyedCodec<>("OutputBufferSize", Codec.INTEGER),
+                        (config, value) -> config.outputBufferSize = value,
+                        config -> config.outputBufferSize
+                ).add()
+                .build();
+
+        // -1 lets Jetty pick a value based on the number of CPU cores
+        private int acceptors = -1;
+        private int selectors = -1;
+        private int idleTimeoutMs = 30000;
+        // 0 uses the operating system's default backlog
+        private int acceptQueueSize = 0;
+        private int requestHeaderSize = 8192;
+        private int responseHeaderSize = 8192;
+        private int outputBufferSize = 32768;
+
+        public int getAcceptors() {
+            return acceptors;
+        }
+
+        public int getSelectors() {
+            return selectors;
+        }
+
+        public int getIdleTimeoutMs() {
+            return idleTimeoutMs;
+        }
+
+        public int getAcceptQueueSize() {
+            return acceptQueueSize;
+        }
+
+        public int getRequestHeaderSize() {
+            return requestHeaderSize;
+        }
+
+        public int getResponseHeaderSize() {
+            return responseHeaderSize;
+        }
+
+        public int getOutputBufferSize() {
+            return outputBufferSize;
+        }
+    }
+
+    /**
+     * Configuration for HTTP/2 support.
+     * <p>
+     * On TLS connectors, HTTP/2 is negotiated via ALPN, with HTTP/1.1 as fallback. On insecure connectors,
+     * HTTP/2 without TLS (h2c) can be enabled separately, as browsers don't support it.
+     * </p>
+     */
+    public static class Http2Config {
+        public static final BuilderCodec<Http2Config> CODEC = BuilderCodec.builder(Http2Config.class, Http2Config::new)
+                .append(
+                        new KeyedCodec<>("Enabled", Codec.BOOLEAN),
+                        (config, value) -> config.enabled = value,
+                        config -> config.enabled
+                ).add()
+                .append(
+                        new KeyedCodec<>("Cleartext", Codec.BOOLEAN),
+                        (config, value) -> config.cleartext = value,
+                        config -> config.cleartext
+                ).add()
+                .append(
+                        new KeyedCodec<>("MaxConcurrentStreams", Codec.INTEGER),
+                        (config, value) -> config.maxConcurrentStreams = value,
+                        config -> config.maxConcurrentStreams
+                ).add()
+                .build();
+
+        private boolean enabled = true;
+        private boolean cleartext = false;
+        private int maxConcurrentStreams = 128;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public boolean isCleartext() {
+            return cleartext;
+        }
+
+        public int getMaxConcurrentStreams() {
+            return maxConcurrentStreams;
+        }
+    }
+
+    /**
+     * Configuration for the cache of parsed templates each plugin's template engine keeps.
+     */
+    public static class TemplateCacheConfig {
+        public static final BuilderCodec<TemplateCacheConfig> CODEC = BuilderCodec.builder(TemplateCacheConfig.class, TemplateCacheConfig::new)
+                .append(
+                        new KeyedCodec<>("MaxEntries", Codec.INTEGER),
+                        (config, value) -> config.maxEntries = value,
+                        config -> config.maxEntries
+                ).add()
+                .append(
+                        new KeyedCodec<>("TtlSeconds", Codec.INTEGER),
+                        (config, value) -> config.ttlSeconds = value,
+                        config -> config.ttlSeconds
+                ).add()
+                .build();
+
+        private int maxEntries = 200;
+        private int ttlSeconds = 0;
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public int getTtlSeconds() {
+            return ttlSeconds;
+        }
+    }
+
+    public static final BuilderCodec<PerformanceConfig> CODEC = BuilderCodec.builder(PerformanceConfig.class, PerformanceConfig::new)
+            .append(
+                    new KeyedCodec<>("ThreadPool", ThreadPoolConfig.CODEC),
+                    (config, value) -> config.threadPool = value,
+                    config -> config.threadPool
+            ).add()
+            .append(
+                    new KeyedCodec<>("Connector", ConnectorConfig.CODEC),
+                    (config, value) -> config.connector = value,
+                    config -> config.connector
+            ).add()
+            .append(
+                    new KeyedCodec<>("Http2", Http2Config.CODEC),
+                    (config, value) -> config.http2 = value,
+                    config -> config.http2
+            ).add()
+            .append(
+                    new KeyedCodec<>("TemplateCache", TemplateCacheConfig.CODEC),
+                    (config, value) -> config.templateCache = value,
+                    config -> config.templateCache
+            ).add()
+            .build();
+
+    private ThreadPoolConfig threadPool = new ThreadPoolConfig();
+    private ConnectorConfig connector = new ConnectorConfig();
+    private Http2Config http2 = new Http2Config();
+    private TemplateCacheConfig templateCache = new TemplateCacheConfig();
+
+    public ThreadPoolConfig getThreadPool() {
+        return threadPool;
+    }
+
+    public ConnectorConfig getConnector() {
+        return connector;
+    }
+
+    public Http2Config getHttp2() {
+        return http2;
+    }
+
+    public TemplateCacheConfig getTemplateCache() {
+        return templateCache;
+    }
+}
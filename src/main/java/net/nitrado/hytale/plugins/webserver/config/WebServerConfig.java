@@ -22,11 +22,23 @@ public final class WebServerConfig {
                     (config, value) -> config.tls = value,
                     config -> config.tls
             ).add()
+            .append(
+                    new KeyedCodec<>("Authentication", AuthenticationConfig.CODEC),
+                    (config, value) -> config.authentication = value,
+                    config -> config.authentication
+            ).add()
+            .append(
+                    new KeyedCodec<>("Performance", PerformanceConfig.CODEC),
+                    (config, value) -> config.performance = value,
+                    config -> config.performance
+            ).add()
             .build();
 
     private String bindHost = Options.getOptionSet().valueOf(Options.BIND).getHostName();
     private int bindPort = Options.getOptionSet().valueOf(Options.BIND).getPort() + 3;
     private TlsConfig tls = new TlsConfig();
+    private AuthenticationConfig authentication = new AuthenticationConfig();
+    private PerformanceConfig performance = new PerformanceConfig();
 
     public String getBindHost() {
         return bindHost;
@@ -39,4 +51,12 @@ public final class WebServerConfig {
     public TlsConfig getTls() {
         return tls;
     }
+
+    public AuthenticationConfig getAuthentication() {
+        return authentication;
+    }
+
+    public PerformanceConfig getPerformance() {
+        return performance;
+    }
 }
@@ -0,0 +1,53 @@
+package net.nitrado.hytale.plugins.webserver.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * A minimal registry of named counters and gauges exposed by the web server.
+ * <p>
+ * Components register a {@link LongSupplier} under a dotted name (e.g. {@code auth.cache.hits}).
+ * Suppliers are only evaluated when a snapshot is taken, so registering a metric has no cost
+ * on the request path.
+ * </p>
+ */
+public final class MetricsRegistry {
+
+    private final Map<String, LongSupplier> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a metric, replacing any metric previously registered under the same name.
+     *
+     * @param name     the metric name
+     * @param supplier supplies the current value of the metric
+     */
+    public void register(String name, LongSupplier supplier) {
+        this.metrics.put(name, supplier);
+    }
+
+    /**
+     * Removes all metrics whose name starts with the given prefix.
+     *
+     * @param prefix the name prefix to remove
+     */
+    public void unregister(String prefix) {
+        this.metrics.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * Returns the current value of every registered metric, sorted by name.
+     *
+     * @return a snapshot of all metrics
+     */
+    public SortedMap<String, Long> snapshot() {
+        var result = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongSupplier> entry : this.metrics.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+
+        return result;
+    }
+}
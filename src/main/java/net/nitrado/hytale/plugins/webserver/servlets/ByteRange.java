@@ -0,0 +1,91 @@
+package net.nitrado.hytale.plugins.webserver.servlets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a representation, with inclusive start and end offsets.
+ */
+record ByteRange(long start, long end) {
+
+    // Protects against requests splitting a file into an excessive number of tiny parts
+    private static final int MAX_RANGES = 16;
+
+    long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * Parses a {@code Range} header for a representation of the given length.
+     *
+     * @param header the value of the Range header
+     * @param length the length of the representation
+     * @return {@code null} if the header should be ignored and the full representation be sent,
+     *         an empty list if no range is satisfiable, or the satisfiable ranges in ascending order
+     */
+    static List<ByteRange> parse(String header, long length) {
+        var trimmed = header.trim();
+        if (!trimmed.regionMatches(true, 0, "bytes=", 0, "bytes=".length())) {
+            return null;
+        }
+
+        var specs = trimmed.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        var result = new ArrayList<ByteRange>();
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dashIndex = spec.indexOf('-');
+            if (dashIndex < 0) {
+                return null;
+            }
+
+            long start;
+            long end;
+            try {
+                if (dashIndex == 0) {
+                    // Suffix range, the last n bytes
+                    long suffixLength = Long.parseLong(spec.substring(1));
+                    if (suffixLength <= 0) {
+                        continue;
+                    }
+
+                    start = Math.max(0, length - suffixLength);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dashIndex));
+                    end = dashIndex == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dashIndex + 1));
+
+                    if (end < start) {
+                        return null;
+                    }
+
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (start < 0) {
+                return null;
+            }
+
+            if (start >= length) {
+                // Not satisfiable, but others may be
+                continue;
+            }
+
+            // Ranges are sent in order, so overlapping or unordered ranges are not supported and the
+            // full representation is sent instead
+            if (!result.isEmpty() && start <= result.getLast().end()) {
+                return null;
+            }
+
+            result.add(new ByteRange(start, end));
+        }
+
+        return result;
+    }
+}
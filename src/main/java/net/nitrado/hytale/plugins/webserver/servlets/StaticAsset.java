@@ -0,0 +1,124 @@
+package net.nitrado.hytale.plugins.webserver.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-memory copy of a static file, together with the validators used for conditional requests and
+ * any content-encoded variants of it.
+ */
+final class StaticAsset {
+
+    static final String BROTLI = "br";
+    static final String GZIP = "gzip";
+
+    // Compressing tiny files gains nothing but costs CPU on the client
+    private static final int MIN_COMPRESSIBLE_SIZE = 256;
+
+    /**
+     * A content-encoded representation of an asset.
+     */
+    record Variant(String encoding, byte[] content, String etag) {}
+
+    private final byte[] content;
+    private final String etag;
+    private final long lastModified;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final Map<String, Variant> variants = new LinkedHashMap<>();
+
+    /**
+     * @param content        the file content
+     * @param precompressed  precompressed variants of the content by encoding, e.g. from {@code .br} or {@code .gz} sibling files
+     * @param compress       whether to create a gzip variant if none was precompressed
+     * @param lastModified   the modification time reported to clients, in milliseconds since the epoch
+     * @param sourceSize     the size of the source file when it was read, or -1 if the source never changes
+     * @param sourceModified the modification time of the source file when it was read, or -1 if the source never changes
+     */
+    StaticAsset(byte[] content, Map<String, byte[]> precompressed, boolean compress, long lastModified, long sourceSize, long sourceModified) {
+        this.content = content;
+        this.etag = computeEtag(content);
+        this.lastModified = lastModified;
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+
+        for (Map.Entry<String, byte[]> entry : precompressed.entrySet()) {
+            this.variants.put(entry.getKey(), new Variant(entry.getKey(), entry.getValue(), computeEtag(entry.getValue())));
+        }
+
+        if (compress && !this.variants.containsKey(GZIP) && content.length >= MIN_COMPRESSIBLE_SIZE) {
+            var compressed = gzip(content);
+            if (compressed.length < content.length) {
+                // Strong ETags must differ between representations
+                var variantEtag = this.etag.substring(0, this.etag.length() - 1) + "-gzip\"";
+                this.variants.put(GZIP, new Variant(GZIP, compressed, variantEtag));
+            }
+        }
+    }
+
+    byte[] getContent() {
+        return content;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    Variant getVariant(String encoding) {
+        return variants.get(encoding);
+    }
+
+    boolean hasVariants() {
+        return !variants.isEmpty();
+    }
+
+    long getMemorySize() {
+        long size = content.length;
+        for (Variant variant : variants.values()) {
+            size += variant.content().length;
+        }
+
+        return size;
+    }
+
+    /**
+     * Checks whether this asset still reflects a source file with the given size and modification time.
+     */
+    boolean matchesSource(long size, long modified) {
+        return this.sourceSize == size && this.sourceModified == modified;
+    }
+
+    private static byte[] gzip(byte[] content) {
+        var out = new ByteArrayOutputStream(content.length / 2);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            // Can't happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static String computeEtag(byte[] content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.nitrado.hytale.plugins.webserver.servlets;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of {@link StaticAsset}s, bounded by the total size of the cached content.
+ */
+final class StaticAssetCache {
+
+    private final LinkedHashMap<String, StaticAsset> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize;
+    private long currentSize = 0;
+
+    StaticAssetCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    synchronized StaticAsset get(String key) {
+        return this.entries.get(key);
+    }
+
+    synchronized void put(String key, StaticAsset asset) {
+        if (asset.getMemorySize() > this.maxSize) {
+            this.remove(key);
+            return;
+        }
+
+        var previous = this.entries.put(key, asset);
+        if (previous != null) {
+            this.currentSize -= previous.getMemorySize();
+        }
+        this.currentSize += asset.getMemorySize();
+
+        this.evict();
+    }
+
+    synchronized void remove(String key) {
+        var previous = this.entries.remove(key);
+        if (previous != null) {
+            this.currentSize -= previous.getMemorySize();
+        }
+    }
+
+    synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        this.evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, StaticAsset>> it = this.entries.entrySet().iterator();
+        while (this.currentSize > this.maxSize && it.hasNext()) {
+            this.currentSize -= it.next().getValue().getMemorySize();
+            it.remove();
+        }
+    }
+}
@@ -1,22 +1,52 @@
 package net.nitrado.hytale.plugins.webserver.servlets;
 
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.ee10.servlet.HttpOutput;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A servlet that serves static files (CSS, JavaScript, images, etc.) from a specified directory.
  * <p>
+ * Files up to {@link #DEFAULT_MAX_CACHED_FILE_SIZE} are kept in an in-memory LRU cache and served with
+ * strong {@code ETag} and {@code Last-Modified} headers, so that revalidating clients receive a
+ * {@code 304 Not Modified}. Cached filesystem entries are reloaded when the file's size or modification
+ * time changes.
+ * </p>
+ * <p>
+ * Cached files are also served content-encoded when the client accepts it: {@code .br} and {@code .gz}
+ * files next to the original are used as precompressed variants, and compressible types without a
+ * {@code .gz} sibling are gzip-compressed once when they are loaded into the cache. Precompressed
+ * siblings are picked up again when the original file changes.
+ * </p>
+ * <p>
+ * Larger filesystem files are streamed unencoded, with a strong {@code ETag} derived from their size and
+ * modification time. Those above the zero-copy threshold (see {@link #setZeroCopyThreshold(long)}) are sent
+ * from memory-mapped regions of the file, without copying their content through the Java heap.
+ * </p>
+ * <p>
  * Example usage:
  * <pre>
  * webServerPlugin
@@ -55,13 +85,37 @@ public final class StaticFileServlet extends HttpServlet {
             Map.entry("map", "application/json")
     );
 
+    private static final Set<String> COMPRESSIBLE_MIME_TYPES = Set.of(
+            "application/javascript",
+            "application/json",
+            "application/xml",
+            "image/svg+xml",
+            "image/x-icon",
+            "font/ttf",
+            "font/otf",
+            "application/vnd.ms-fontobject"
+    );
+
     private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
     private static final int BUFFER_SIZE = 8192;
 
+    public static final long DEFAULT_MAX_CACHE_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAX_CACHED_FILE_SIZE = 1024 * 1024;
+    public static final long DEFAULT_ZERO_COPY_THRESHOLD = 1024 * 1024;
+
+    // Upper bound for a single mapped region, so that huge files don't require a single huge mapping
+    private static final long MAPPED_REGION_SIZE = 16 * 1024 * 1024;
+
     private final Path baseDirectory;
     private final String classpathBase;
     private final ClassLoader classLoader;
 
+    private final StaticAssetCache cache = new StaticAssetCache(DEFAULT_MAX_CACHE_SIZE);
+    private volatile long maxCachedFileSize = DEFAULT_MAX_CACHED_FILE_SIZE;
+    private volatile long zeroCopyThreshold = DEFAULT_ZERO_COPY_THRESHOLD;
+    // Used as Last-Modified for classpath resources that don't report a modification time
+    private final long createdAt = System.currentTimeMillis();
+
     /**
      * Creates a new StaticFileServlet serving files from the specified directory.
      *
@@ -102,91 +156,138 @@ public final class StaticFileServlet extends HttpServlet {
         this.classLoader = classLoader;
     }
 
+    /**
+     * Configures the in-memory cache of static files.
+     *
+     * @param maxCacheSize      the maximum total size of all cached files, in bytes
+     * @param maxCachedFileSize the maximum size of a single file to be cached, in bytes; larger files are streamed
+     */
+    public void setCacheLimits(long maxCacheSize, long maxCachedFileSize) {
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.cache.setMaxSize(maxCacheSize);
+    }
+
+    /**
+     * Sets the size above which uncached filesystem files are sent without copying them through the heap.
+     *
+     * @param zeroCopyThreshold the minimum file size for zero-copy transfers, in bytes
+     */
+    public void setZeroCopyThreshold(long zeroCopyThreshold) {
+        this.zeroCopyThreshold = zeroCopyThreshold;
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        this.serve(req, resp, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        this.serve(req, resp, false);
+    }
+
+    private void serve(HttpServletRequest req, HttpServletResponse resp, boolean sendBody) throws IOException {
         String pathInfo = req.getPathInfo();
         if (pathInfo == null || pathInfo.isEmpty()) {
             pathInfo = "/";
         }
 
-        if (baseDirectory != null && serveFromFilesystem(pathInfo, resp)) {
-            return;
+        if (baseDirectory != null) {
+            // Resolve the requested file path
+            Path requestedFile = baseDirectory.resolve(pathInfo.substring(1)).normalize();
+
+            // Security check: ensure the resolved path is within the base directory
+            if (!requestedFile.startsWith(baseDirectory)) {
+                resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Access denied");
+                return;
+            }
+
+            if (serveFromFilesystem(requestedFile, req, resp, sendBody)) {
+                return;
+            }
         }
 
-        if (classpathBase != null && serveFromClasspath(pathInfo, resp)) {
-            return;
+        if (classpathBase != null) {
+            // Security check: prevent path traversal
+            if (pathInfo.contains("..")) {
+                resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Access denied");
+                return;
+            }
+
+            // Build resource path and normalize double slashes
+            String resourcePath = (classpathBase + pathInfo).replaceAll("/+", "/");
+
+            if (serveFromClasspath(resourcePath, req, resp, sendBody)) {
+                return;
+            }
         }
 
         resp.sendError(HttpServletResponse.SC_NOT_FOUND);
     }
 
-    private boolean serveFromClasspath(String pathInfo, HttpServletResponse resp) throws IOException {
-        // Security check: prevent path traversal
-        if (pathInfo.contains("..")) {
-            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Access denied");
-            return true;
+    private boolean serveFromClasspath(String resourcePath, HttpServletRequest req, HttpServletResponse resp, boolean sendBody) throws IOException {
+        if (resourcePath.endsWith("/")) {
+            return false;
         }
 
-        // Build resource path
-        String resourcePath = classpathBase + pathInfo;
-        // Normalize double slashes
-        resourcePath = resourcePath.replaceAll("/+", "/");
+        String contentType = getContentType(resourcePath);
+        String cacheKey = "classpath:" + resourcePath;
+
+        // Classpath resources don't change at runtime, so cached entries never need revalidation
+        StaticAsset asset = cache.get(cacheKey);
+        if (asset != null) {
+            sendAsset(req, resp, asset, contentType, resourcePath, sendBody);
+            return true;
+        }
 
         URL resourceUrl = classLoader.getResource(resourcePath);
         if (resourceUrl == null) {
             return false;
         }
 
-        // Determine content type from path
-        String contentType = getContentType(pathInfo);
-        resp.setContentType(contentType);
+        URLConnection connection = resourceUrl.openConnection();
+        long contentLength = connection.getContentLengthLong();
+        long lastModified = connection.getLastModified() > 0 ? connection.getLastModified() : createdAt;
 
-        // Try to get content length
-        try {
-            URLConnection connection = resourceUrl.openConnection();
-            int contentLength = connection.getContentLength();
-            if (contentLength >= 0) {
-                resp.setContentLength(contentLength);
+        if (contentLength < 0 || contentLength > maxCachedFileSize) {
+            // Too large to be cached, stream the resource to the response
+            try (InputStream in = connection.getInputStream()) {
+                sendStream(req, resp, in, contentLength, null, lastModified, contentType, resourcePath, sendBody);
             }
-        } catch (IOException e) {
-            // Ignore - content length will just not be set
+            return true;
         }
 
-        // Set caching headers
-        setCacheHeaders(resp, pathInfo);
+        byte[] content;
+        try (InputStream in = connection.getInputStream()) {
+            content = in.readAllBytes();
+        }
 
-        // Stream the resource to the response
-        try (InputStream in = classLoader.getResourceAsStream(resourcePath);
-             OutputStream out = resp.getOutputStream()) {
-            if (in == null) {
-                return false;
-            }
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+        var precompressed = new HashMap<String, byte[]>();
+        for (var encoding : Map.of(StaticAsset.BROTLI, ".br", StaticAsset.GZIP, ".gz").entrySet()) {
+            try (InputStream in = classLoader.getResourceAsStream(resourcePath + encoding.getValue())) {
+                if (in != null) {
+                    precompressed.put(encoding.getKey(), in.readAllBytes());
+                }
             }
         }
 
+        asset = new StaticAsset(content, precompressed, isCompressible(contentType), lastModified, -1, -1);
+        cache.put(cacheKey, asset);
+
+        sendAsset(req, resp, asset, contentType, resourcePath, sendBody);
         return true;
     }
 
-    private boolean serveFromFilesystem(String pathInfo, HttpServletResponse resp) throws IOException {
-        // Resolve the requested file path
-        Path requestedFile = baseDirectory.resolve(pathInfo.substring(1)).normalize();
-
-        // Security check: ensure the resolved path is within the base directory
-        if (!requestedFile.startsWith(baseDirectory)) {
-            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Access denied");
-            return true;
-        }
-
+    private boolean serveFromFilesystem(Path requestedFile, HttpServletRequest req, HttpServletResponse resp, boolean sendBody) throws IOException {
         // Check if file exists and is readable
-        if (!Files.exists(requestedFile)) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(requestedFile, BasicFileAttributes.class);
+        } catch (IOException e) {
             return false;
         }
 
-        if (!Files.isRegularFile(requestedFile)) {
+        if (!attributes.isRegularFile()) {
             return false;
         }
 
@@ -194,88 +295,396 @@ public final class StaticFileServlet extends HttpServlet {
             return false;
         }
 
-        // Determine content type
         String contentType = getContentType(requestedFile);
-        resp.setContentType(contentType);
+        String fileName = requestedFile.getFileName().toString();
+        long fileSize = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        if (fileSize > maxCachedFileSize) {
+            // Too large to be cached, stream the file to the response. Hashing the content on every request
+            // would be too expensive, so the ETag is derived from size and modification time. It is strong
+            // because these files are only ever sent unencoded, which lets If-Range resume downloads with it.
+            var etag = "\"" + Long.toHexString(fileSize) + "-" + Long.toHexString(lastModified) + "\"";
+
+            if (fileSize >= zeroCopyThreshold) {
+                sendFile(req, resp, requestedFile, fileSize, etag, lastModified, contentType, fileName, sendBody);
+                return true;
+            }
 
-        // Set content length
-        long fileSize = Files.size(requestedFile);
-        if (fileSize <= Integer.MAX_VALUE) {
-            resp.setContentLength((int) fileSize);
-        } else {
-            resp.setHeader("Content-Length", String.valueOf(fileSize));
+            try (InputStream in = Files.newInputStream(requestedFile)) {
+                sendStream(req, resp, in, fileSize, etag, lastModified, contentType, fileName, sendBody);
+            }
+            return true;
         }
 
-        // Set caching headers for static assets
-        setCacheHeaders(resp, requestedFile.getFileName().toString());
+        String cacheKey = "file:" + requestedFile;
+        StaticAsset asset = cache.get(cacheKey);
+        if (asset == null || !asset.matchesSource(fileSize, lastModified)) {
+            byte[] content = Files.readAllBytes(requestedFile);
 
-        // Stream the file to the response
-        try (InputStream in = Files.newInputStream(requestedFile);
-             OutputStream out = resp.getOutputStream()) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+            var precompressed = new HashMap<String, byte[]>();
+            for (var encoding : Map.of(StaticAsset.BROTLI, ".br", StaticAsset.GZIP, ".gz").entrySet()) {
+                Path sibling = requestedFile.resolveSibling(fileName + encoding.getValue());
+                if (Files.isRegularFile(sibling)) {
+                    precompressed.put(encoding.getKey(), Files.readAllBytes(sibling));
+                }
             }
+
+            asset = new StaticAsset(content, precompressed, isCompressible(contentType), lastModified, fileSize, lastModified);
+            cache.put(cacheKey, asset);
         }
 
+        sendAsset(req, resp, asset, contentType, fileName, sendBody);
         return true;
     }
 
-    @Override
-    protected void doHead(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        String pathInfo = req.getPathInfo();
-        if (pathInfo == null || pathInfo.isEmpty()) {
-            pathInfo = "/";
+    private void sendAsset(HttpServletRequest req, HttpServletResponse resp, StaticAsset asset, String contentType, String fileName, boolean sendBody) throws IOException {
+        byte[] content = asset.getContent();
+        String etag = asset.getEtag();
+
+        if (asset.hasVariants()) {
+            resp.setHeader("Vary", "Accept-Encoding");
+
+            // Ranges are only served from the unencoded representation
+            var variant = req.getHeader("Range") == null ? selectVariant(req, asset) : null;
+            if (variant != null) {
+                content = variant.content();
+                etag = variant.etag();
+                resp.setHeader("Content-Encoding", variant.encoding());
+            }
         }
 
-        if (classpathBase != null) {
-            // Security check: prevent path traversal
-            if (pathInfo.contains("..")) {
-                resp.sendError(HttpServletResponse.SC_FORBIDDEN);
-                return;
+        byte[] body = content;
+        sendContent(req, resp, (out, position, length) -> out.write(body, (int) position, (int) length),
+                content.length, etag, asset.getLastModified(), contentType, fileName, sendBody);
+    }
+
+    /**
+     * Picks the best content-encoded variant of the asset the client accepts, preferring brotli over gzip,
+     * or {@code null} if the unencoded content should be sent.
+     */
+    private static StaticAsset.Variant selectVariant(HttpServletRequest req, StaticAsset asset) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+
+        var qualities = new HashMap<String, Double>();
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim().toLowerCase();
+            double quality = 1.0;
+
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 1.0;
+                    }
+                }
             }
-            String resourcePath = classpathBase + pathInfo;
-            resourcePath = resourcePath.replaceAll("/+", "/");
 
-            URL resourceUrl = classLoader.getResource(resourcePath);
-            if (resourceUrl == null) {
-                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
-                return;
+            qualities.put(coding, quality);
+        }
+
+        for (String encoding : new String[]{StaticAsset.BROTLI, StaticAsset.GZIP}) {
+            var variant = asset.getVariant(encoding);
+            if (variant == null) {
+                continue;
+            }
+
+            double quality = qualities.getOrDefault(encoding, qualities.getOrDefault("*", 0.0));
+            if (quality > 0) {
+                return variant;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || COMPRESSIBLE_MIME_TYPES.contains(contentType);
+    }
+
+    private void sendStream(HttpServletRequest req, HttpServletResponse resp, InputStream in, long contentLength, String etag, long lastModified, String contentType, String fileName, boolean sendBody) throws IOException {
+        sendContent(req, resp, new StreamContentSource(in), contentLength, etag, lastModified, contentType, fileName, sendBody);
+    }
+
+    private void sendFile(HttpServletRequest req, HttpServletResponse resp, Path file, long fileSize, String etag, long lastModified, String contentType, String fileName, boolean sendBody) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            sendContent(req, resp, (out, position, length) -> writeFileRegion(channel, position, length, out),
+                    fileSize, etag, lastModified, contentType, fileName, sendBody);
+        }
+    }
+
+    /**
+     * Sends a representation, handling conditional requests as well as single and multiple byte ranges.
+     *
+     * @param source        the source of the content
+     * @param contentLength the length of the content, or -1 if unknown
+     */
+    private void sendContent(HttpServletRequest req, HttpServletResponse resp, ContentSource source, long contentLength, String etag, long lastModified, String contentType, String fileName, boolean sendBody) throws IOException {
+        setValidatorHeaders(resp, etag, lastModified);
+        setCacheHeaders(resp, fileName);
+
+        if (isNotModified(req, etag, lastModified)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<ByteRange> ranges = null;
+        if (contentLength >= 0) {
+            resp.setHeader("Accept-Ranges", "bytes");
+
+            // Range requests are only defined for GET
+            if (sendBody) {
+                ranges = getRequestedRanges(req, etag, lastModified, contentLength);
+            }
+        }
+
+        if (ranges != null && ranges.isEmpty()) {
+            resp.setHeader("Content-Range", "bytes */" + contentLength);
+            resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        if (ranges == null) {
+            resp.setContentType(contentType);
+            if (contentLength >= 0) {
+                resp.setContentLengthLong(contentLength);
             }
 
-            resp.setContentType(getContentType(pathInfo));
-            try {
-                URLConnection connection = resourceUrl.openConnection();
-                int contentLength = connection.getContentLength();
-                if (contentLength >= 0) {
-                    resp.setContentLength(contentLength);
+            if (sendBody) {
+                try (ServletOutputStream out = resp.getOutputStream()) {
+                    source.writeTo(out, 0, contentLength);
                 }
-            } catch (IOException e) {
-                // Ignore
             }
-            setCacheHeaders(resp, pathInfo);
-        } else {
-            Path requestedFile = baseDirectory.resolve(pathInfo.substring(1)).normalize();
+            return;
+        }
 
-            if (!requestedFile.startsWith(baseDirectory)) {
-                resp.sendError(HttpServletResponse.SC_FORBIDDEN);
-                return;
+        resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+        if (ranges.size() == 1) {
+            var range = ranges.getFirst();
+
+            resp.setContentType(contentType);
+            resp.setHeader("Content-Range", "bytes " + range.start() + "-" + range.end() + "/" + contentLength);
+            resp.setContentLengthLong(range.length());
+
+            try (ServletOutputStream out = resp.getOutputStream()) {
+                source.writeTo(out, range.start(), range.length());
             }
+            return;
+        }
 
-            if (!Files.exists(requestedFile) || !Files.isRegularFile(requestedFile)) {
-                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
-                return;
+        // Multiple ranges are sent as multipart/byteranges
+        var boundary = Long.toHexString(ThreadLocalRandom.current().nextLong()) + Long.toHexString(System.nanoTime());
+        var partHeaders = new ArrayList<byte[]>();
+        long totalLength = 0;
+        for (ByteRange range : ranges) {
+            var partHeader = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + contentType + "\r\n"
+                    + "Content-Range: bytes " + range.start() + "-" + range.end() + "/" + contentLength + "\r\n"
+                    + "\r\n";
+            var bytes = partHeader.getBytes(StandardCharsets.ISO_8859_1);
+            partHeaders.add(bytes);
+            totalLength += bytes.length + range.length();
+        }
+        var closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        totalLength += closingBoundary.length;
+
+        resp.setContentType("multipart/byteranges; boundary=" + boundary);
+        resp.setContentLengthLong(totalLength);
+
+        try (ServletOutputStream out = resp.getOutputStream()) {
+            for (int i = 0; i < ranges.size(); i++) {
+                var range = ranges.get(i);
+                out.write(partHeaders.get(i));
+                source.writeTo(out, range.start(), range.length());
             }
+            out.write(closingBoundary);
+        }
+    }
+
+    /**
+     * Determines the byte ranges requested by the client.
+     *
+     * @return {@code null} if the full representation should be sent, an empty list if the requested
+     *         ranges are not satisfiable, or the ranges to send
+     */
+    private List<ByteRange> getRequestedRanges(HttpServletRequest req, String etag, long lastModified, long contentLength) {
+        String range = req.getHeader("Range");
+        if (range == null) {
+            return null;
+        }
+
+        // If-Range makes the range request conditional: if the representation changed, send all of it
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange != null && !ifRangeMatches(req, ifRange.trim(), etag, lastModified)) {
+            return null;
+        }
+
+        return ByteRange.parse(range, contentLength);
+    }
+
+    private boolean ifRangeMatches(HttpServletRequest req, String ifRange, String etag, long lastModified) {
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
 
-            resp.setContentType(getContentType(requestedFile));
-            long fileSize = Files.size(requestedFile);
-            if (fileSize <= Integer.MAX_VALUE) {
-                resp.setContentLength((int) fileSize);
-            } else {
-                resp.setHeader("Content-Length", String.valueOf(fileSize));
+        if (ifRange.startsWith("\"")) {
+            // If-Range requires the strong comparison function
+            return etag != null && !etag.startsWith("W/") && etag.equals(ifRange);
+        }
+
+        if (lastModified <= 0) {
+            return false;
+        }
+
+        long date;
+        try {
+            date = req.getDateHeader("If-Range");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * Writes a region of a file to the response without copying it through the heap where possible.
+     * <p>
+     * With Jetty's output stream, the file is memory-mapped and the mapped buffers are handed to Jetty
+     * directly. Otherwise, {@link FileChannel#transferTo} is used.
+     * </p>
+     */
+    private void writeFileRegion(FileChannel channel, long position, long length, ServletOutputStream out) throws IOException {
+        if (out instanceof HttpOutput httpOutput) {
+            while (length > 0) {
+                long regionSize = Math.min(length, MAPPED_REGION_SIZE);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+                httpOutput.write(region);
+
+                position += regionSize;
+                length -= regionSize;
+            }
+            return;
+        }
+
+        WritableByteChannel target = Channels.newChannel(out);
+        while (length > 0) {
+            long transferred = channel.transferTo(position, length, target);
+            if (transferred <= 0) {
+                // The file was truncated while sending it
+                throw new IOException("Unexpected end of file");
+            }
+
+            position += transferred;
+            length -= transferred;
+        }
+    }
+
+    private void setValidatorHeaders(HttpServletResponse resp, String etag, long lastModified) {
+        if (etag != null) {
+            resp.setHeader("ETag", etag);
+        }
+        if (lastModified > 0) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+    }
+
+    /**
+     * Evaluates If-None-Match and If-Modified-Since. If-Modified-Since is only considered when no
+     * If-None-Match header is present.
+     */
+    private boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etag != null && etagMatches(ifNoneMatch, etag);
+        }
+
+        if (lastModified <= 0) {
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        // HTTP dates only have a precision of seconds
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Checks whether any entity tag in the given header matches, using the weak comparison function.
+     */
+    private static boolean etagMatches(String header, String etag) {
+        String opaqueTag = stripWeakPrefix(etag);
+
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || stripWeakPrefix(candidate).equals(opaqueTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * A source of response content that can be written in parts.
+     */
+    @FunctionalInterface
+    private interface ContentSource {
+        /**
+         * Writes {@code length} bytes starting at {@code position} to the output, or everything from
+         * {@code position} on if {@code length} is -1.
+         */
+        void writeTo(ServletOutputStream out, long position, long length) throws IOException;
+    }
+
+    /**
+     * Content read from a stream, which only supports writing parts in ascending order.
+     */
+    private static final class StreamContentSource implements ContentSource {
+        private final InputStream in;
+        private long offset = 0;
+
+        StreamContentSource(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void writeTo(ServletOutputStream out, long position, long length) throws IOException {
+            if (position < offset) {
+                throw new IOException("Stream content can only be written in ascending order");
+            }
+
+            in.skipNBytes(position - offset);
+            offset = position;
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (length < 0 || remaining > 0) {
+                int toRead = length < 0 ? buffer.length : (int) Math.min(buffer.length, remaining);
+                int bytesRead = in.read(buffer, 0, toRead);
+                if (bytesRead == -1) {
+                    break;
+                }
+
+                out.write(buffer, 0, bytesRead);
+                offset += bytesRead;
+                remaining -= bytesRead;
             }
-            setCacheHeaders(resp, requestedFile);
         }
     }
 
@@ -284,18 +693,15 @@ public final class StaticFileServlet extends HttpServlet {
     }
 
     private String getContentType(String fileName) {
+        int slashIndex = fileName.lastIndexOf('/');
         int dotIndex = fileName.lastIndexOf('.');
-        if (dotIndex > 0 && dotIndex < fileName.length() - 1) {
+        if (dotIndex > slashIndex + 1 && dotIndex < fileName.length() - 1) {
             String extension = fileName.substring(dotIndex + 1).toLowerCase();
             return MIME_TYPES.getOrDefault(extension, DEFAULT_MIME_TYPE);
         }
         return DEFAULT_MIME_TYPE;
     }
 
-    private void setCacheHeaders(HttpServletResponse resp, Path file) {
-        setCacheHeaders(resp, file.getFileName().toString());
-    }
-
     private void setCacheHeaders(HttpServletResponse resp, String fileName) {
         int dotIndex = fileName.lastIndexOf('.');
         if (dotIndex > 0) {
@@ -307,5 +713,3 @@ public final class StaticFileServlet extends HttpServlet {
         }
     }
 }
-
-
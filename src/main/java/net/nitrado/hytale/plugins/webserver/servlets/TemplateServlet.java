@@ -6,19 +6,32 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
 import net.nitrado.hytale.plugins.webserver.Permissions;
 import net.nitrado.hytale.plugins.webserver.WebServerPlugin;
 import net.nitrado.hytale.plugins.webserver.authentication.HytaleUserPrincipal;
+import net.nitrado.hytale.plugins.webserver.templates.FragmentCache;
+import org.eclipse.jetty.ee10.servlet.ServletContextRequest;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.LazyContextVariable;
 import org.thymeleaf.context.WebContext;
 import org.thymeleaf.web.servlet.JakartaServletWebApplication;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Supplier;
 
 public abstract class TemplateServlet extends HttpServlet {
 
+    // Enough to cover the layout's <head>, so the browser can start fetching stylesheets
+    private static final int STREAMING_SHELL_CHARS = 2048;
+
+    private static final String LAYOUT_TEMPLATE = "nitrado.webserver";
+    private static final int FRAGMENT_CACHE_ENTRIES = 64;
+
     private final TemplateEngine templateEngine;
+    private final FragmentCache fragmentCache = new FragmentCache(FRAGMENT_CACHE_ENTRIES);
+    private boolean streaming;
     private JakartaServletWebApplication webApplication;
     private WebServerPlugin parentPlugin;
 
@@ -30,12 +43,12 @@ public abstract class TemplateServlet extends HttpServlet {
 
     public TemplateServlet(WebServerPlugin parentPlugin) {
         this.parentPlugin = parentPlugin;
-        this.templateEngine = parentPlugin.getTemplateEngineFactory().getDefaultEngine();
+        this.templateEngine = parentPlugin.getTemplateEngineFactory().getSharedDefaultEngine();
     }
 
     public TemplateServlet(WebServerPlugin parentPlugin, JavaPlugin thisPlugin) {
         this.parentPlugin = parentPlugin;
-        this.templateEngine = parentPlugin.getTemplateEngineFactory().getEngineFor(thisPlugin);
+        this.templateEngine = parentPlugin.getTemplateEngineFactory().getSharedEngineFor(thisPlugin);
     }
 
     protected void renderTemplate(HttpServletRequest req, HttpServletResponse resp, String template) throws IOException {
@@ -48,11 +61,131 @@ public abstract class TemplateServlet extends HttpServlet {
 
         thymeleafContext.setVariables(getBuiltinVariables(req));
 
+        // Only rendered if the page uses the layout and the layout reads it
+        thymeleafContext.setVariable("pluginNav", new LazyContextVariable<String>() {
+            @Override
+            protected String loadValue() {
+                return renderPluginNav(req, resp);
+            }
+        });
+
         if (variables != null) {
             thymeleafContext.setVariables(variables);
         }
 
-        this.templateEngine.process(template, thymeleafContext, resp.getWriter());
+        if (!this.streaming) {
+            this.templateEngine.process(template, thymeleafContext, resp.getWriter());
+            return;
+        }
+
+        // Headers can't be added once the shell has been sent
+        if (resp.getContentType() == null) {
+            resp.setContentType("text/html;charset=UTF-8");
+        }
+
+        var processor = this.templateEngine.processThrottled(template, thymeleafContext);
+        var writer = resp.getWriter();
+
+        try {
+            processor.process(STREAMING_SHELL_CHARS, writer);
+            resp.flushBuffer();
+
+            // The rest is sent whenever the response buffer fills up
+            processor.processAll(writer);
+        } catch (RuntimeException e) {
+            if (resp.isCommitted()) {
+                // The 200 has already been sent, so an error page can no longer replace the page. Aborting
+                // the connection keeps clients and caches from taking the truncated page for a complete one.
+                abort(req, e);
+            }
+
+            // Otherwise, the container replaces the partial page with an error page
+            throw e;
+        }
+    }
+
+    private static void abort(HttpServletRequest req, Throwable cause) {
+        var request = ServletContextRequest.getServletContextRequest(req);
+        if (request != null) {
+            request.getServletChannel().abort(cause);
+        }
+    }
+
+    /**
+     * Renders a single fragment of a template, reusing the output of earlier renders with the same cache key
+     * until a plugin adds or removes servlets.
+     * <p>
+     * The cache key must capture everything the fragment's output depends on apart from the registered
+     * plugins, such as the permissions it checks, as the output is shared between all users of this servlet.
+     * In particular, a fragment that reads one of the {@link #getBuiltinVariables built-in variables} that
+     * differ between users, such as {@code user}, must include it in the key or not be cached. For the same
+     * reason, URLs in cached output aren't rewritten to carry session IDs. The result can be included in a
+     * page with {@code th:utext}.
+     * </p>
+     *
+     * @param template  the template containing the fragment
+     * @param fragment  the name of the fragment, as given in {@code th:fragment}
+     * @param cacheKey  the key distinguishing different outputs of the fragment, or null to not cache it
+     * @param variables additional variables for the fragment, may be null
+     * @return the rendered fragment
+     */
+    protected String renderFragment(HttpServletRequest req, HttpServletResponse resp, String template, String fragment, String cacheKey, Map<String, Object> variables) {
+        Supplier<String> renderer = () -> {
+            var exchange = webApplication.buildExchange(req, cacheKey == null ? resp : new UnencodedUrlResponse(resp));
+            var thymeleafContext = new WebContext(exchange);
+
+            thymeleafContext.setVariables(getBuiltinVariables(req));
+
+            if (variables != null) {
+                thymeleafContext.setVariables(variables);
+            }
+
+            return this.templateEngine.process(template, Set.of(fragment), thymeleafContext);
+        };
+
+        if (cacheKey == null) {
+            return renderer.get();
+        }
+
+        return this.fragmentCache.get(template, fragment, cacheKey, this.parentPlugin.getRoutesVersion(), renderer);
+    }
+
+    /**
+     * Renders the layout's plugin list.
+     * <p>
+     * The fragment only reads {@code pluginGroups} and {@code pluginsByGroups}, which are set if and only if
+     * the user may list plugins, and are otherwise derived from the registered plugins. So whether the user may
+     * list plugins is the only part of its output that differs between users. Changes to the fragment that
+     * make it read anything else, such as the {@code user}, have to extend the cache key.
+     * </p>
+     */
+    private String renderPluginNav(HttpServletRequest req, HttpServletResponse resp) {
+        var cacheKey = this.canListPlugins(req) ? "plugins" : "none";
+        return this.renderFragment(req, resp, LAYOUT_TEMPLATE, "pluginNav", cacheKey, null);
+    }
+
+    /**
+     * Enables or disables streaming rendering for this servlet.
+     * <p>
+     * When enabled, the beginning of each page, including the layout's {@code <head>}, is sent to the client
+     * before the rest of the template is rendered, so the browser can load stylesheets and scripts in the
+     * meantime.
+     * </p>
+     * <p>
+     * The response is committed at that point, so servlets opting in must set the status and all headers
+     * before calling {@code renderTemplate}, and can't redirect or change them afterwards, e.g. from within
+     * the template or a {@link LazyContextVariable}. If rendering fails after the response was committed, the
+     * connection is aborted instead of completing the truncated page with status 200.
+     * </p>
+     *
+     * @param streaming whether to stream rendered pages
+     */
+    protected void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    protected boolean isStreaming() {
+        return this.streaming;
     }
 
     protected Map<String, Object> getBuiltinVariables(HttpServletRequest req) {
@@ -66,19 +199,36 @@ public abstract class TemplateServlet extends HttpServlet {
         var version = TemplateServlet.class.getPackage().getImplementationVersion();
         variables.put("version", version != null ? version : "dev");
 
-        if (
-            userPrincipal instanceof HytaleUserPrincipal hytaleUserPrincipal
-                    && hytaleUserPrincipal.hasPermission(Permissions.WEB_LIST_PLUGINS)
-        ) {
-            var pluginsByGroups = getPluginsByGroups();
+        if (this.canListPlugins(req)) {
+            // Only computed if the page actually uses them, e.g. not when the plugin list is cached
+            var pluginsByGroups = new LazyContextVariable<Map<String, List<PluginIdentifier>>>() {
+                @Override
+                protected Map<String, List<PluginIdentifier>> loadValue() {
+                    return getPluginsByGroups();
+                }
+            };
 
             variables.put("pluginsByGroups", pluginsByGroups);
-            variables.put("pluginGroups", pluginsByGroups.keySet().stream().sorted().toList());
+            variables.put("pluginGroups", new LazyContextVariable<List<String>>() {
+                @Override
+                protected List<String> loadValue() {
+                    return pluginsByGroups.getValue().keySet().stream().sorted().toList();
+                }
+            });
         }
 
         return variables;
     }
 
+    private boolean canListPlugins(HttpServletRequest req) {
+        return req.getUserPrincipal() instanceof HytaleUserPrincipal hytaleUserPrincipal
+                && hytaleUserPrincipal.hasPermission(Permissions.WEB_LIST_PLUGINS);
+    }
+
+    /**
+     * Returns the template engine this servlet renders with. It is shared by all servlets of the plugin, and must
+     * not be customized, see {@link net.nitrado.hytale.plugins.webserver.templates.TemplateEngineFactory#getSharedEngineFor}.
+     */
     protected TemplateEngine getTemplateEngine() {
         return this.templateEngine;
     }
@@ -97,4 +247,24 @@ public abstract class TemplateServlet extends HttpServlet {
 
         return result;
     }
+
+    /**
+     * Leaves URLs untouched, so no session ID ends up in output shared between users.
+     */
+    private static final class UnencodedUrlResponse extends HttpServletResponseWrapper {
+
+        UnencodedUrlResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public String encodeURL(String url) {
+            return url;
+        }
+
+        @Override
+        public String encodeRedirectURL(String url) {
+            return url;
+        }
+    }
 }
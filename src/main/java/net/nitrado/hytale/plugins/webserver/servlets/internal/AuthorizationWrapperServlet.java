@@ -5,11 +5,14 @@ import com.hypixel.hytale.server.core.permissions.PermissionHolder;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.*;
 import net.nitrado.hytale.plugins.webserver.authentication.HytaleUserPrincipal;
+import net.nitrado.hytale.plugins.webserver.authorization.PermissionRequirement;
 import net.nitrado.hytale.plugins.webserver.authorization.RequirePermissions;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 
@@ -18,9 +21,23 @@ public final class AuthorizationWrapperServlet extends HttpServlet {
             Collections.newSetFromMap(new WeakHashMap<>())
     );
 
+    private static final Map<String, String> SERVLET_METHOD_NAMES = Map.of(
+            "GET", "doGet",
+            "POST", "doPost",
+            "PUT", "doPut",
+            "DELETE", "doDelete",
+            "HEAD", "doHead",
+            "OPTIONS", "doOptions",
+            "TRACE", "doTrace"
+    );
+
     private final HttpServlet delegate;
     private final HytaleLogger logger;
 
+    // Permission requirements of the delegate by HTTP method, compiled once in init(). Methods without
+    // requirements are absent.
+    private Map<String, PermissionRequirement> permissionsByMethod = Map.of();
+
     public AuthorizationWrapperServlet(HytaleLogger logger, HttpServlet delegate) {
         this.delegate = delegate;
         this.logger = logger;
@@ -29,6 +46,8 @@ public final class AuthorizationWrapperServlet extends HttpServlet {
     @Override
     public void init() throws ServletException {
         super.init();
+        this.permissionsByMethod = resolvePermissionAnnotations(delegate.getClass());
+
         if (initializedServlets.add(delegate)) {
             delegate.init(getServletConfig());
         }
@@ -46,19 +65,15 @@ public final class AuthorizationWrapperServlet extends HttpServlet {
     protected void service(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
 
-        RequirePermissions[] rps = findPermissionAnnotations(delegate.getClass(), req.getMethod());
-        if (rps != null && !checkPermissions(req, resp, rps)) {
+        PermissionRequirement requirement = permissionsByMethod.get(req.getMethod());
+        if (requirement != null && !checkPermissions(req, resp, requirement)) {
             return;
         }
 
         delegate.service(req, resp);
     }
 
-    private boolean checkPermissions(HttpServletRequest req, HttpServletResponse res, RequirePermissions[] rps) {
-        if (rps.length == 0) {
-            return true;
-        }
-
+    private boolean checkPermissions(HttpServletRequest req, HttpServletResponse res, PermissionRequirement requirement) {
         var user =  req.getUserPrincipal();
 
         if (user == null) {
@@ -71,87 +86,70 @@ public final class AuthorizationWrapperServlet extends HttpServlet {
             return false;
         }
 
-        var isAnonymous = isAnonymousUser(holder);
-
-
-        for  (RequirePermissions rp : rps) {
-            var isAllowed = rp.mode() == RequirePermissions.Mode.ANY ?
-                      checkPermissionsAny(holder, rp.value())
-                    : checkPermissionsAll(holder, rp.value());
-
-
-            if (!isAllowed) {
-                if (isAnonymous) {
-                    res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                } else {
-                    res.setStatus(HttpServletResponse.SC_FORBIDDEN);
-                }
-
-                return false;
+        if (!requirement.isSatisfiedBy(holder)) {
+            if (isAnonymousUser(holder)) {
+                res.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            } else {
+                res.setStatus(HttpServletResponse.SC_FORBIDDEN);
             }
+
+            return false;
         }
 
         return true;
     }
 
-    private boolean checkPermissionsAll(PermissionHolder holder, String[] permissions) {
-        for (String permission : permissions) {
-            if (!holder.hasPermission(permission)) {
-                return false;
-            }
+    private boolean isAnonymousUser(PermissionHolder holder) {
+        if (!(holder instanceof HytaleUserPrincipal principal)) {
+            return false;
         }
 
-        return true;
+        return principal.isAnonymous();
     }
 
-    private boolean checkPermissionsAny(PermissionHolder holder, String[] permissions) {
-        if (permissions.length == 0) {
-            return true;
+    private static Map<String, PermissionRequirement> resolvePermissionAnnotations(Class<?> servletClass) {
+        var annotations = new HashMap<String, RequirePermissions[]>();
+        for (var entry : SERVLET_METHOD_NAMES.entrySet()) {
+            annotations.put(entry.getKey(), findPermissionAnnotations(servletClass, entry.getValue()));
         }
 
-        for (String permission : permissions) {
-            if (holder.hasPermission(permission)) {
-                return true;
-            }
+        // HttpServlet implements HEAD by calling doGet, so it needs the same permissions unless doHead is overridden
+        if (findServletMethod(servletClass, "doHead") == null) {
+            annotations.put("HEAD", annotations.get("GET"));
+        }
 
+        var result = new HashMap<String, PermissionRequirement>();
+        for (var entry : annotations.entrySet()) {
+            if (entry.getValue().length > 0) {
+                result.put(entry.getKey(), PermissionRequirement.of(entry.getValue()));
+            }
         }
 
-        return false;
+        return Map.copyOf(result);
     }
 
-    private boolean isAnonymousUser(PermissionHolder holder) {
-        if (!(holder instanceof HytaleUserPrincipal principal)) {
-            return false;
+    private static RequirePermissions[] findPermissionAnnotations(Class<?> servletClass, String servletMethodName) {
+        Method m = findServletMethod(servletClass, servletMethodName);
+        if (m == null) {
+            return new RequirePermissions[0];
         }
 
-        return principal.isAnonymous();
+        return m.getAnnotationsByType(RequirePermissions.class);
     }
 
-    private RequirePermissions[] findPermissionAnnotations(Class<?> servletClass, String httpMethod) {
-        String servletMethodName = toServletMethodName(httpMethod);
-        if (servletMethodName == null) return null;
-
-        try {
-            // Only checks if the servlet author overrode the method (public/protected in class hierarchy)
-            Method m = servletClass.getDeclaredMethod(servletMethodName, HttpServletRequest.class, HttpServletResponse.class);
-            return m.getAnnotationsByType(RequirePermissions.class);
-        } catch (NoSuchMethodException e) {
-            this.logger.atSevere().withCause(e).log("no such method %s on class %s",  servletMethodName, servletClass.toString());
-            return null;
+    /**
+     * Finds the most specific override of a servlet method in the class hierarchy, ignoring the default
+     * implementations of {@link HttpServlet} itself.
+     */
+    private static Method findServletMethod(Class<?> servletClass, String servletMethodName) {
+        for (Class<?> c = servletClass; c != null && c != HttpServlet.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredMethod(servletMethodName, HttpServletRequest.class, HttpServletResponse.class);
+            } catch (NoSuchMethodException e) {
+                // Not overridden on this level, continue with the superclass
+            }
         }
-    }
 
-    private static String toServletMethodName(String httpMethod) {
-        return switch (httpMethod) {
-            case "GET" -> "doGet";
-            case "POST" -> "doPost";
-            case "PUT" -> "doPut";
-            case "DELETE" -> "doDelete";
-            case "HEAD" -> "doHead";
-            case "OPTIONS" -> "doOptions";
-            case "TRACE" -> "doTrace";
-            default -> null;
-        };
+        return null;
     }
 }
-
@@ -11,6 +11,7 @@ public class IndexServlet extends TemplateServlet {
 
     public IndexServlet(WebServerPlugin parentPlugin) {
         super(parentPlugin);
+        this.setStreaming(true);
     }
 
     @Override
@@ -6,6 +6,9 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import net.nitrado.hytale.plugins.webserver.WebServerPlugin;
+import net.nitrado.hytale.plugins.webserver.authentication.internal.LoginRateLimiter;
+import net.nitrado.hytale.plugins.webserver.authentication.store.CredentialHasher;
+import net.nitrado.hytale.plugins.webserver.authentication.store.CredentialHasherOverloadedException;
 import net.nitrado.hytale.plugins.webserver.authentication.store.CredentialValidator;
 import net.nitrado.hytale.plugins.webserver.authentication.store.LoginCodeStore;
 import net.nitrado.hytale.plugins.webserver.authentication.store.UserCredentialStore;
@@ -23,35 +26,39 @@ public final class LoginServlet extends TemplateServlet {
     private final HytaleLogger logger;
     private final CredentialValidator credentialValidator;
     private final UserCredentialStore credentialStore;
+    private final CredentialHasher hasher;
     private final LoginCodeStore loginCodeStore;
+    private final LoginRateLimiter rateLimiter;
 
-    public LoginServlet(WebServerPlugin plugin, HytaleLogger logger, UserCredentialStore credentialStore, CredentialValidator validator, LoginCodeStore loginCodeStore) {
+    public LoginServlet(WebServerPlugin plugin, HytaleLogger logger, UserCredentialStore credentialStore, CredentialHasher hasher, CredentialValidator validator, LoginCodeStore loginCodeStore, LoginRateLimiter rateLimiter) {
         super(plugin);
 
         this.logger = logger;
         this.credentialStore = credentialStore;
+        this.hasher = hasher;
         this.loginCodeStore = loginCodeStore;
         this.credentialValidator = validator;
+        this.rateLimiter = rateLimiter;
     }
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         resp.setContentType("text/html;charset=utf-8");
-        var session = req.getSession();
+        var session = req.getSession(false);
 
         var m = new HashMap<String, Object>();
         m.put("CSRF_TOKEN", "abcd");
-        var uuidString = session.getAttribute("uuid");
-        if (uuidString != null) {
-            m.put("UUID", uuidString.toString());
+        if (session != null) {
+            var uuidString = session.getAttribute("uuid");
+            if (uuidString != null) {
+                m.put("UUID", uuidString.toString());
+            }
         }
 
         this.renderTemplate(req, resp, "nitrado.webserver.login", m);
     }
 
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        var session = req.getSession();
-
         var m = new HashMap<String, Object>();
 
         UUID loggedInUUID = null;
@@ -59,52 +66,117 @@ public final class LoginServlet extends TemplateServlet {
         var loginMethod = req.getParameter("method");
         String username, password;
         LoginCodeStore.Entry entry;
-        switch(loginMethod) {
-            case "code":
-                entry = getStoredEntryByLoginCode(req.getParameter("loginCode"));
-                if (entry == null || entry.uuid() == null) {
-                    m.put("ERROR", "Login code invalid or expired.");
-                    break;
-                }
-
-                loggedInUUID = entry.uuid();
-                loggedInUsername = entry.displayName();
-                break;
-            case "password":
-                username = req.getParameter("username");
-                password = req.getParameter("password");
-
-                var loggedInUser = getUuidByPlayerPassword(username, password);
-                if (loggedInUser == null) {
-                    m.put("ERROR", "Invalid username or password.");
-                    break;
-                }
 
-                loggedInUsername = loggedInUser.username();
-                loggedInUUID = loggedInUser.uuid();
-                break;
-            case "passwordCreate":
-                entry = getStoredEntryByLoginCode(req.getParameter("loginCode"));
+        // Code logins only reveal the account once the code was looked up, so they are limited by IP alone
+        var clientIp = req.getRemoteAddr();
+        var attemptedAccount = "password".equals(loginMethod) ? req.getParameter("username") : null;
+        var failedAttempt = false;
+
+        if (this.rateLimiter != null) {
+            long retryAfter = this.rateLimiter.acquire(clientIp, attemptedAccount);
+            if (retryAfter > 0) {
+                resp.setStatus(429);
+                resp.setHeader("Retry-After", Long.toString(retryAfter));
+                m.put("ERROR", "Too many failed login attempts. Please try again later.");
+                m.put("CSRF_TOKEN", "abcd");
+
+                this.renderTemplate(req, resp, "nitrado.webserver.login", m);
+                return;
+            }
+        }
 
-                if  (entry == null || entry.uuid() == null) {
-                    m.put("ERROR", "Login code invalid or expired.");
+        try {
+            switch(loginMethod) {
+                case "code":
+                    entry = getStoredEntryByLoginCode(req.getParameter("loginCode"));
+                    if (entry == null || entry.uuid() == null) {
+                        m.put("ERROR", "Login code invalid or expired.");
+                        failedAttempt = true;
+                        break;
+                    }
+
+                    loggedInUUID = entry.uuid();
+                    loggedInUsername = entry.displayName();
                     break;
-                }
-
-                password = req.getParameter("password");
-                if (password.length() < 8) {
-                    m.put("ERROR", "Password too short.");
+                case "password":
+                    username = req.getParameter("username");
+                    password = req.getParameter("password");
+
+                    var loggedInUser = getUuidByPlayerPassword(username, password);
+                    if (loggedInUser == null) {
+                        m.put("ERROR", "Invalid username or password.");
+                        failedAttempt = true;
+                        break;
+                    }
+
+                    loggedInUsername = loggedInUser.username();
+                    loggedInUUID = loggedInUser.uuid();
+                    break;
+                case "passwordCreate":
+                    // The code is only redeemed once the password is hashed, so a rejected attempt doesn't use it up
+                    var loginCode = req.getParameter("loginCode");
+                    entry = this.loginCodeStore.peekEntry(loginCode);
+
+                    if  (entry == null || entry.uuid() == null) {
+                        m.put("ERROR", "Login code invalid or expired.");
+                        failedAttempt = true;
+                        break;
+                    }
+
+                    password = req.getParameter("password");
+                    if (password.length() < 8) {
+                        m.put("ERROR", "Password too short.");
+                        break;
+                    }
+
+                    var passwordHash = this.hasher.hash(password);
+
+                    if (!this.loginCodeStore.redeem(loginCode, entry)) {
+                        // Used by a concurrent request in the meantime
+                        m.put("ERROR", "Login code invalid or expired.");
+                        failedAttempt = true;
+                        break;
+                    }
+
+                    loggedInUUID = entry.uuid();
+                    loggedInUsername = entry.displayName();
+
+                    this.credentialStore.importUserCredential(loggedInUUID, entry.displayName(), passwordHash);
                     break;
-                }
+            }
+        } catch (CredentialHasherOverloadedException e) {
+            if (this.rateLimiter != null) {
+                this.rateLimiter.release(clientIp, attemptedAccount);
+            }
 
-                loggedInUUID = entry.uuid();
-                loggedInUsername = entry.displayName();
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.setHeader("Retry-After", "1");
+            m.put("ERROR", "The server is busy. Please try again in a moment.");
+            m.put("CSRF_TOKEN", "abcd");
+
+            this.renderTemplate(req, resp, "nitrado.webserver.login", m);
+            return;
+        }
 
-                this.credentialStore.setUserCredential(loggedInUUID, entry.displayName(), password);
-                break;
+        // Only failed attempts keep the attempt reserved with the rate limiter
+        if (this.rateLimiter != null) {
+            if (failedAttempt) {
+                this.rateLimiter.recordFailure(clientIp, attemptedAccount);
+            } else {
+                this.rateLimiter.release(clientIp, attemptedAccount);
+            }
         }
 
         if (loggedInUUID != null) {
+            // Sessions are only created once a login succeeded. An already existing session gets a new ID
+            // to prevent session fixation.
+            var session = req.getSession(false);
+            if (session != null) {
+                req.changeSessionId();
+            } else {
+                session = req.getSession(true);
+            }
+
             session.setAttribute("uuid", loggedInUUID);
             session.setAttribute("username", loggedInUsername);
 
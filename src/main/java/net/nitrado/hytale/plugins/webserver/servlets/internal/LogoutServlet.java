@@ -20,7 +20,11 @@ public final class LogoutServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        req.getSession().invalidate();
+        var session = req.getSession(false);
+        if (session != null) {
+            session.invalidate();
+        }
+
         resp.sendRedirect(resp.encodeRedirectURL("/"));
     }
 }
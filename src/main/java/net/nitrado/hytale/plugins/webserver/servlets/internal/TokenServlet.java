@@ -0,0 +1,50 @@
+package net.nitrado.hytale.plugins.webserver.servlets.internal;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.nitrado.hytale.plugins.webserver.authentication.HytaleUserPrincipal;
+import net.nitrado.hytale.plugins.webserver.authentication.internal.BearerTokenSigner;
+import org.bson.Document;
+
+import java.io.IOException;
+
+/**
+ * Exchanges a service account's Basic Auth credential for a short-lived bearer token.
+ * <p>
+ * Responds with {@code {"access_token": "...", "token_type": "Bearer", "expires_in": 900}}.
+ * </p>
+ */
+public final class TokenServlet extends HttpServlet {
+
+    private final BearerTokenSigner signer;
+
+    public TokenServlet(BearerTokenSigner signer) {
+        this.signer = signer;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        // Only Basic Auth is configured for this endpoint, so any other user is the anonymous one
+        if (!(req.getUserPrincipal() instanceof HytaleUserPrincipal principal) || principal.isAnonymous()) {
+            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        var token = signer.issue(principal.getUuid(), principal.getName());
+        if (token == null) {
+            // The account was deleted after its credential was verified
+            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        var body = new Document()
+                .append("access_token", token)
+                .append("token_type", "Bearer")
+                .append("expires_in", signer.getTtl().toSeconds());
+
+        resp.setContentType("application/json");
+        resp.setHeader("Cache-Control", "no-store");
+        resp.getWriter().write(body.toJson());
+    }
+}
@@ -0,0 +1,80 @@
+package net.nitrado.hytale.plugins.webserver.templates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * FragmentCache keeps the rendered output of template fragments, so that parts of a page that rarely change
+ * aren't rendered again on every request.
+ * <p>
+ * Entries are keyed by template, fragment and a key chosen by the caller, which has to capture everything the
+ * fragment's output depends on, such as the permissions it checks. All entries are dropped when a newer
+ * version is passed in, e.g. because servlets were added or removed. Requests still carrying an older version
+ * render the fragment without touching the cache, so they can't evict or overwrite newer output.
+ * </p>
+ */
+public final class FragmentCache {
+
+    private record FragmentKey(String template, String fragment, String cacheKey) {}
+
+    private final int maxEntries;
+    private final Map<FragmentKey, String> entries;
+    private long version = -1;
+
+    public FragmentCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FragmentKey, String> eldest) {
+                return size() > FragmentCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached output of a fragment, rendering it if it isn't cached for the given version yet.
+     *
+     * @param template the template containing the fragment
+     * @param fragment the fragment's name
+     * @param cacheKey the key distinguishing different outputs of the same fragment
+     * @param version  the version the output must have been rendered at
+     * @param renderer renders the fragment on a cache miss
+     * @return the fragment's output
+     */
+    public String get(String template, String fragment, String cacheKey, long version, Supplier<String> renderer) {
+        var key = new FragmentKey(template, fragment, cacheKey);
+
+        synchronized (this.entries) {
+            if (version > this.version) {
+                this.entries.clear();
+                this.version = version;
+            }
+
+            if (version == this.version) {
+                var output = this.entries.get(key);
+                if (output != null) {
+                    return output;
+                }
+            }
+        }
+
+        // Render without holding the lock, concurrent misses for the same key may render twice
+        var output = renderer.get();
+
+        synchronized (this.entries) {
+            if (this.version == version) {
+                this.entries.put(key, output);
+            }
+        }
+
+        return output;
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+}
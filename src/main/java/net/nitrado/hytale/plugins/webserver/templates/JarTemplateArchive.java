@@ -0,0 +1,166 @@
+package net.nitrado.hytale.plugins.webserver.templates;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+/**
+ * Index of the entries of a plugin JAR, shared by all {@link JarTemplateResolver}s reading from it.
+ * <p>
+ * The central directory is read once, on first use. Checking whether a template exists is a lookup in the
+ * in-memory index, and small entries below the preload prefix are kept in memory, so resolving bundled
+ * templates doesn't touch the disk at all. Larger entries are read through a single JAR handle that is kept
+ * open until {@link #close()}. After that, the archive stays usable for engines that outlive it, but opens the
+ * JAR for each read of a larger entry and closes it right away.
+ * </p>
+ */
+public final class JarTemplateArchive implements Closeable {
+
+    private static final int PRELOAD_MAX_BYTES = 64 * 1024;
+
+    private record Index(Set<String> entryNames, Map<String, byte[]> preloaded) {}
+
+    private final Path jarPath;
+    private final String preloadPrefix;
+
+    private volatile Index index;
+    private JarFile jar;
+    private boolean closed;
+
+    /**
+     * @param jarPath       the path to the JAR file
+     * @param preloadPrefix the prefix of the entries to keep in memory, such as {@code templates/}, or null to
+     *                      keep none
+     */
+    public JarTemplateArchive(Path jarPath, String preloadPrefix) {
+        this.jarPath = jarPath;
+        this.preloadPrefix = preloadPrefix;
+    }
+
+    /**
+     * Creates an archive that isn't owned by anyone who would close it. It keeps no entries in memory and no
+     * JAR handle open between reads.
+     *
+     * @param jarPath the path to the JAR file
+     * @return the archive
+     */
+    static JarTemplateArchive unowned(Path jarPath) {
+        var archive = new JarTemplateArchive(jarPath, null);
+        archive.closed = true;
+        return archive;
+    }
+
+    public Path getJarPath() {
+        return this.jarPath;
+    }
+
+    /**
+     * Checks whether the JAR contains an entry.
+     *
+     * @param name the entry's name
+     * @return true if the entry exists, false if it doesn't or the JAR can't be read
+     */
+    public boolean contains(String name) {
+        try {
+            return this.index().entryNames().contains(name);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens an entry for reading.
+     *
+     * @param name the entry's name
+     * @return the entry's content
+     * @throws IOException if the entry doesn't exist or the JAR can't be read
+     */
+    public InputStream open(String name) throws IOException {
+        var index = this.index();
+
+        var content = index.preloaded().get(name);
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+
+        if (!index.entryNames().contains(name)) {
+            throw new IOException("Resource not found: " + name + " in " + this.jarPath);
+        }
+
+        synchronized (this) {
+            if (this.closed) {
+                // Nobody would close a handle opened now, so it only lives for this read
+                try (var jar = new JarFile(this.jarPath.toFile())) {
+                    return read(jar, name);
+                }
+            }
+
+            if (this.jar == null) {
+                this.jar = new JarFile(this.jarPath.toFile());
+            }
+
+            return read(this.jar, name);
+        }
+    }
+
+    /**
+     * Closes the JAR handle, if one is open. Preloaded entries remain readable, other entries are read by opening
+     * the JAR for each read.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.closed = true;
+
+        if (this.jar != null) {
+            this.jar.close();
+            this.jar = null;
+        }
+    }
+
+    private static InputStream read(JarFile jar, String name) throws IOException {
+        // Read fully, so closing the handle can't break a reader that is still in use
+        try (var in = jar.getInputStream(jar.getEntry(name))) {
+            return new ByteArrayInputStream(in.readAllBytes());
+        }
+    }
+
+    private Index index() throws IOException {
+        var index = this.index;
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (this) {
+            if (this.index == null) {
+                var entryNames = new HashSet<String>();
+                var preloaded = new HashMap<String, byte[]>();
+
+                try (var jar = new JarFile(this.jarPath.toFile())) {
+                    var entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        var entry = entries.nextElement();
+                        entryNames.add(entry.getName());
+
+                        if (!entry.isDirectory() && this.preloadPrefix != null && entry.getName().startsWith(this.preloadPrefix)
+                                && entry.getSize() >= 0 && entry.getSize() <= PRELOAD_MAX_BYTES) {
+                            try (var in = jar.getInputStream(entry)) {
+                                preloaded.put(entry.getName(), in.readAllBytes());
+                            }
+                        }
+                    }
+                }
+
+                this.index = new Index(Set.copyOf(entryNames), Map.copyOf(preloaded));
+            }
+
+            return this.index;
+        }
+    }
+}
@@ -17,15 +17,26 @@ import java.util.Map;
  */
 public final class JarTemplateResolver extends AbstractConfigurableTemplateResolver {
 
-    private final Path jarPath;
+    private final JarTemplateArchive archive;
 
     /**
-     * Creates a new JarTemplateResolver for the specified JAR file.
+     * Creates a new JarTemplateResolver for the specified JAR file. Since nothing closes the resolver, it
+     * keeps no JAR handle open between reads; use {@link #JarTemplateResolver(JarTemplateArchive)} with a
+     * closeable archive to avoid reopening the JAR.
      *
      * @param jarPath the path to the JAR file to load templates from
      */
     public JarTemplateResolver(Path jarPath) {
-        this.jarPath = jarPath;
+        this(JarTemplateArchive.unowned(jarPath));
+    }
+
+    /**
+     * Creates a new JarTemplateResolver reading from an archive that may be shared with other resolvers.
+     *
+     * @param archive the archive to load templates from
+     */
+    public JarTemplateResolver(JarTemplateArchive archive) {
+        this.archive = archive;
     }
 
     @Override
@@ -37,7 +48,7 @@ public final class JarTemplateResolver extends AbstractConfigurableTemplateResol
             String characterEncoding,
             Map<String, Object> templateResolutionAttributes) {
 
-        return new JarTemplateResource(jarPath, resourceName, characterEncoding);
+        return new JarTemplateResource(archive, resourceName, characterEncoding);
     }
 }
 
@@ -4,27 +4,29 @@ import org.thymeleaf.templateresource.ITemplateResource;
 
 import java.io.*;
 import java.nio.file.Path;
-import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
 
 /**
  * A Thymeleaf template resource that reads content directly from a JAR file entry.
  */
 public final class JarTemplateResource implements ITemplateResource {
 
-    private final Path jarPath;
+    private final JarTemplateArchive archive;
     private final String resourceName;
     private final String characterEncoding;
 
     public JarTemplateResource(Path jarPath, String resourceName, String characterEncoding) {
-        this.jarPath = jarPath;
+        this(JarTemplateArchive.unowned(jarPath), resourceName, characterEncoding);
+    }
+
+    public JarTemplateResource(JarTemplateArchive archive, String resourceName, String characterEncoding) {
+        this.archive = archive;
         this.resourceName = resourceName;
         this.characterEncoding = characterEncoding;
     }
 
     @Override
     public String getDescription() {
-        return "JAR resource [" + resourceName + "] in [" + jarPath.getFileName() + "]";
+        return "JAR resource [" + resourceName + "] in [" + archive.getJarPath().getFileName() + "]";
     }
 
     @Override
@@ -37,37 +39,12 @@ public final class JarTemplateResource implements ITemplateResource {
 
     @Override
     public boolean exists() {
-        try (var jar = new JarFile(jarPath.toFile())) {
-            ZipEntry entry = jar.getEntry(resourceName);
-            return entry != null;
-        } catch (IOException e) {
-            return false;
-        }
+        return archive.contains(resourceName);
     }
 
     @Override
     public Reader reader() throws IOException {
-        var jar = new JarFile(jarPath.toFile());
-        ZipEntry entry = jar.getEntry(resourceName);
-
-        if (entry == null) {
-            jar.close();
-            throw new IOException("Resource not found: " + resourceName + " in " + jarPath);
-        }
-
-        InputStream inputStream = jar.getInputStream(entry);
-
-        // Wrap to ensure JAR is closed when reader is closed
-        return new InputStreamReader(inputStream, characterEncoding) {
-            @Override
-            public void close() throws IOException {
-                try {
-                    super.close();
-                } finally {
-                    jar.close();
-                }
-            }
-        };
+        return new InputStreamReader(archive.open(resourceName), characterEncoding);
     }
 
     @Override
@@ -75,7 +52,7 @@ public final class JarTemplateResource implements ITemplateResource {
         // Resolve relative path from current resource
         var lastSlash = resourceName.lastIndexOf('/');
         String basePath = lastSlash >= 0 ? resourceName.substring(0, lastSlash + 1) : "";
-        return new JarTemplateResource(jarPath, basePath + relativeLocation, characterEncoding);
+        return new JarTemplateResource(archive, basePath + relativeLocation, characterEncoding);
     }
 }
 
@@ -1,10 +1,18 @@
 package net.nitrado.hytale.plugins.webserver.templates;
 
+import com.hypixel.hytale.common.plugin.PluginIdentifier;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
+import com.hypixel.hytale.server.core.plugin.PluginBase;
 import net.nitrado.hytale.plugins.webserver.WebServerPlugin;
+import net.nitrado.hytale.plugins.webserver.config.PerformanceConfig;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.StandardCacheManager;
 import org.thymeleaf.templatemode.TemplateMode;
-import org.thymeleaf.templateresolver.FileTemplateResolver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Factory for creating Thymeleaf {@link TemplateEngine} instances configured for use within the
@@ -17,6 +25,15 @@ import org.thymeleaf.templateresolver.FileTemplateResolver;
  * </ul>
  * The theme folder resolver has higher priority, allowing server administrators to override bundled templates.
  * </p>
+ * <p>
+ * {@link #getEngineFor(JavaPlugin)} and {@link #getDefaultEngine()} create a new engine on every call, which the
+ * caller may customize, e.g. by adding dialects. {@link #getSharedEngineFor(JavaPlugin)} and
+ * {@link #getSharedDefaultEngine()} return an engine that is created on first use and shared by all servlets of
+ * the same plugin, so each template is parsed and cached once per plugin rather than once per servlet. Shared
+ * engines must not be customized, as that would affect every other user, and fails once the engine has rendered
+ * its first template. A shared engine is discarded when the plugin's servlets are removed via
+ * {@link WebServerPlugin#removeServlets(PluginBase)}.
+ * </p>
  *
  * <h3>Usage</h3>
  * <p>
@@ -35,22 +52,42 @@ import org.thymeleaf.templateresolver.FileTemplateResolver;
 public final class TemplateEngineFactory {
 
     private final WebServerPlugin plugin;
+    private final PerformanceConfig.TemplateCacheConfig cacheConfig;
+    private final Map<PluginIdentifier, TemplateEngine> engines = new ConcurrentHashMap<>();
+    // Every engine resolves WebServerPlugin's templates, so archives are shared across engines
+    private final Map<Path, JarTemplateArchive> archives = new ConcurrentHashMap<>();
 
     /**
-     * Creates a new TemplateEngineFactory instance.
+     * Creates a new TemplateEngineFactory instance with the default template cache configuration.
      *
      * @param plugin the WebServerPlugin instance that owns this factory
      */
     public TemplateEngineFactory(WebServerPlugin plugin) {
+        this(plugin, new PerformanceConfig.TemplateCacheConfig());
+    }
+
+    /**
+     * Creates a new TemplateEngineFactory instance.
+     *
+     * @param plugin      the WebServerPlugin instance that owns this factory
+     * @param cacheConfig the configuration of each engine's template cache
+     */
+    public TemplateEngineFactory(WebServerPlugin plugin, PerformanceConfig.TemplateCacheConfig cacheConfig) {
         this.plugin = plugin;
+        this.cacheConfig = cacheConfig;
     }
 
     private JarTemplateResolver getJarTemplateResolverFor(JavaPlugin plugin) {
-        var resolver = new JarTemplateResolver(plugin.getFile());
+        var archive = this.archives.computeIfAbsent(plugin.getFile(), path -> new JarTemplateArchive(path, "templates/"));
+
+        var resolver = new JarTemplateResolver(archive);
         resolver.setPrefix("templates/");
         resolver.setSuffix(".html");
         resolver.setTemplateMode(TemplateMode.HTML);
         resolver.setCacheable(true);
+        if (this.cacheConfig.getTtlSeconds() > 0) {
+            resolver.setCacheTTLMs(this.cacheConfig.getTtlSeconds() * 1000L);
+        }
         resolver.setCharacterEncoding("UTF-8");
         resolver.setName(plugin.getIdentifier() + "_Jar");
 
@@ -59,8 +96,8 @@ public final class TemplateEngineFactory {
         return resolver;
     }
 
-    private FileTemplateResolver getThemeFolderTemplateResolverFor(JavaPlugin plugin) {
-        var resolver = new FileTemplateResolver();
+    private ThemeTemplateResolver getThemeFolderTemplateResolverFor(JavaPlugin plugin) {
+        var resolver = new ThemeTemplateResolver();
 
         var dataDir = plugin.getDataDirectory();
 
@@ -68,7 +105,6 @@ public final class TemplateEngineFactory {
         resolver.setPrefix(prefix);
         resolver.setSuffix(".html");
         resolver.setTemplateMode(TemplateMode.HTML);
-        resolver.setCacheable(false);
         resolver.setCharacterEncoding("UTF-8");
         resolver.setName(plugin.getIdentifier() + "_ThemeFolder");
 
@@ -89,23 +125,28 @@ public final class TemplateEngineFactory {
      *   <li>WebServerPlugin's JAR resolver (order 20)</li>
      * </ol>
      * </p>
+     * <p>
+     * The engine is new and owned by the caller, who may customize it. Callers that don't need to should
+     * use {@link #getSharedDefaultEngine()} instead.
+     * </p>
      *
      * @return a configured TemplateEngine for the WebServerPlugin's templates
      */
     public TemplateEngine getDefaultEngine() {
-        var result = new TemplateEngine();
-
-        var jarResolver = this.getJarTemplateResolverFor(this.plugin);
-        jarResolver.setOrder(20);
-
-        result.addTemplateResolver(jarResolver);
-
-        var themeFolderResolver = this.getThemeFolderTemplateResolverFor(this.plugin);
-        themeFolderResolver.setOrder(15);
-
-        result.addTemplateResolver(themeFolderResolver);
+        return this.createDefaultEngine();
+    }
 
-        return result;
+    /**
+     * Returns the shared engine for the WebServerPlugin's own templates, configured like
+     * {@link #getDefaultEngine()}.
+     * <p>
+     * The engine is shared with all other callers and must not be customized.
+     * </p>
+     *
+     * @return the shared TemplateEngine for the WebServerPlugin's templates
+     */
+    public TemplateEngine getSharedDefaultEngine() {
+        return this.engines.computeIfAbsent(this.plugin.getIdentifier(), identifier -> this.createDefaultEngine());
     }
 
     /**
@@ -114,7 +155,7 @@ public final class TemplateEngineFactory {
      * <p>
      * Templates are expected to be in the {@code templates/} directory of the plugin's JAR
      * or in {@code <dataDir>/theme/templates/}, with {@code .html} suffix and UTF-8 encoding.
-     * JAR-resolved templates are cached; theme folder templates are not cached to allow live editing.
+     * Templates are cached; theme folder templates are parsed again whenever their file changes, to allow live editing.
      * </p>
      * <p>
      * Resolution priority (lower order = higher priority):
@@ -127,12 +168,93 @@ public final class TemplateEngineFactory {
      * This allows plugins to override WebServerPlugin templates (e.g., layout.html) while
      * still falling back to defaults.
      * </p>
+     * <p>
+     * The engine is new and owned by the caller, who may customize it. Callers that don't need to should
+     * use {@link #getSharedEngineFor(JavaPlugin)} instead, so templates aren't parsed once per engine.
+     * </p>
      *
-     * @param plugin the plugin for which to create the template engine
+     * @param plugin the plugin for which to get the template engine
      * @return a configured TemplateEngine with resolvers for both the specified plugin and WebServerPlugin
      */
     public TemplateEngine getEngineFor(JavaPlugin plugin) {
-        var result = this.getDefaultEngine();
+        if (plugin == this.plugin) {
+            return this.getDefaultEngine();
+        }
+
+        return this.createEngineFor(plugin);
+    }
+
+    /**
+     * Returns the shared engine for the specified plugin, configured like {@link #getEngineFor(JavaPlugin)}.
+     * <p>
+     * The engine is created on first use and shared by all servlets of the plugin until
+     * {@link #release(PluginBase)}. It must not be customized: adding dialects or resolvers would affect every
+     * other user of the engine, and fails once it has rendered its first template.
+     * </p>
+     *
+     * @param plugin the plugin for which to get the template engine
+     * @return the shared TemplateEngine for the specified plugin
+     */
+    public TemplateEngine getSharedEngineFor(JavaPlugin plugin) {
+        if (plugin == this.plugin) {
+            return this.getSharedDefaultEngine();
+        }
+
+        return this.engines.computeIfAbsent(plugin.getIdentifier(), identifier -> this.createEngineFor(plugin));
+    }
+
+    /**
+     * Discards the shared template engine of the specified plugin, along with its cached templates, and closes the
+     * plugin's JAR.
+     * <p>
+     * Servlets still holding on to the engine keep working, but the next call to
+     * {@link #getSharedEngineFor(JavaPlugin)} creates a new one.
+     * </p>
+     *
+     * @param plugin the plugin whose template engine to discard
+     */
+    public void release(PluginBase plugin) {
+        var engine = this.engines.remove(plugin.getIdentifier());
+        if (engine != null && engine.isInitialized()) {
+            engine.clearTemplateCache();
+        }
+
+        if (!(plugin instanceof JavaPlugin javaPlugin)) {
+            return;
+        }
+
+        var archive = this.archives.remove(javaPlugin.getFile());
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                this.plugin.getLogger().atWarning().withCause(e).log("Failed to close %s", javaPlugin.getFile().getFileName());
+            }
+        }
+    }
+
+    private TemplateEngine createDefaultEngine() {
+        var result = new TemplateEngine();
+
+        var cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(this.cacheConfig.getMaxEntries());
+        result.setCacheManager(cacheManager);
+
+        var jarResolver = this.getJarTemplateResolverFor(this.plugin);
+        jarResolver.setOrder(20);
+
+        result.addTemplateResolver(jarResolver);
+
+        var themeFolderResolver = this.getThemeFolderTemplateResolverFor(this.plugin);
+        themeFolderResolver.setOrder(15);
+
+        result.addTemplateResolver(themeFolderResolver);
+
+        return result;
+    }
+
+    private TemplateEngine createEngineFor(JavaPlugin plugin) {
+        var result = this.createDefaultEngine();
 
         var jarResolver = this.getJarTemplateResolverFor(plugin);
         jarResolver.setOrder(10);
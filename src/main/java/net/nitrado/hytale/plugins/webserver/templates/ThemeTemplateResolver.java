@@ -0,0 +1,84 @@
+package net.nitrado.hytale.plugins.webserver.templates;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.cache.ICacheEntryValidity;
+import org.thymeleaf.templateresolver.FileTemplateResolver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+/**
+ * A Thymeleaf template resolver for theme folders that caches parsed templates until their file changes.
+ * <p>
+ * Each render only compares the file's modification time and size with those at the time it was parsed,
+ * instead of reading and parsing it again, so theme templates stay live-editable. When a template file is
+ * deleted, resolution falls back to the next resolver.
+ * </p>
+ */
+public final class ThemeTemplateResolver extends FileTemplateResolver {
+
+    public ThemeTemplateResolver() {
+        this.setCacheable(true);
+    }
+
+    @Override
+    protected ICacheEntryValidity computeValidity(
+            IEngineConfiguration configuration,
+            String ownerTemplate,
+            String template,
+            Map<String, Object> templateResolutionAttributes) {
+
+        var resourceName = this.computeResourceName(
+                configuration,
+                ownerTemplate,
+                template,
+                this.getPrefix(),
+                this.getSuffix(),
+                this.getForceSuffix(),
+                this.getTemplateAliases(),
+                templateResolutionAttributes
+        );
+
+        return new FileModificationValidity(Path.of(resourceName));
+    }
+
+    /**
+     * Keeps a cache entry valid as long as its file is unchanged.
+     */
+    private static final class FileModificationValidity implements ICacheEntryValidity {
+
+        private final Path path;
+        private final FileState state;
+
+        FileModificationValidity(Path path) {
+            this.path = path;
+            this.state = FileState.of(path);
+        }
+
+        @Override
+        public boolean isCacheable() {
+            // Files that vanished between resolution and parsing aren't worth caching
+            return this.state != null;
+        }
+
+        @Override
+        public boolean isCacheStillValid() {
+            return this.state.equals(FileState.of(this.path));
+        }
+    }
+
+    private record FileState(long lastModified, long size) {
+
+        static FileState of(Path path) {
+            try {
+                var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileState(attributes.lastModifiedTime().toMillis(), attributes.size());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}